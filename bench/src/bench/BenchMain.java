@@ -0,0 +1,41 @@
+package bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so allocation rates are reported
+ * along with throughput. An optional argument restricts the run to benchmarks
+ * matching a regular expression, for example <code>GridUtilBench.initCounts</code>.
+ * <p>
+ * This project depends on the hw2 project. The JMH jars, including the
+ * annotation processor, are found through the <code>JMH_HOME</code> classpath
+ * variable, which should point to a directory holding
+ * <code>jmh-core.jar</code>, <code>jmh-generator-annprocess.jar</code> and
+ * their dependencies <code>jopt-simple.jar</code> and
+ * <code>commons-math3.jar</code>. README.txt in this project describes how
+ * to get the jars and how to build and run the benchmarks, in Eclipse or from
+ * the command line.
+ */
+public class BenchMain
+{
+	/**
+	 * Entry point.
+	 *
+	 * @param args
+	 *            optional pattern of benchmarks to run
+	 * @throws RunnerException
+	 *             if the benchmarks cannot be run
+	 */
+	public static void main(String[] args) throws RunnerException
+	{
+		Options options = new OptionsBuilder()
+				.include(args.length > 0 ? args[0] : "bench\\..*")
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
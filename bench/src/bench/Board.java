@@ -0,0 +1,69 @@
+package bench;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import hw2.Grid;
+import hw2.GridUtil;
+
+/**
+ * Board size and mine density shared by all benchmarks. Boards are square,
+ * and every board with the same parameters has the same mines.
+ */
+@State(Scope.Thread)
+public class Board
+{
+	/**
+	 * Seed for placing mines
+	 */
+	static final long SEED = 42;
+
+	/**
+	 * Number of rows and of columns
+	 */
+	@Param({ "9", "100", "1000", "5000" })
+	public int size;
+
+	/**
+	 * Fraction of cells that are mines
+	 */
+	@Param({ "0.12", "0.2" })
+	public double density;
+
+	/**
+	 * Returns the number of mines for the current parameters.
+	 *
+	 * @return number of mines
+	 */
+	public int mines()
+	{
+		return (int) (size * (long) size * density);
+	}
+
+	/**
+	 * Builds a grid for the current parameters, with mines placed at random
+	 * and counts set.
+	 *
+	 * @return new grid, all hidden
+	 */
+	public Grid newGrid()
+	{
+		Grid grid = new Grid(size, size);
+		Random rand = new Random(SEED);
+		int placed = 0;
+		while (placed < mines())
+		{
+			int x = rand.nextInt(grid.size());
+			if (!grid.isMine(x))
+			{
+				grid.setMine(x, true);
+				placed++;
+			}
+		}
+		GridUtil.initCounts(grid);
+		return grid;
+	}
+}
@@ -0,0 +1,177 @@
+package bench;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import api.Cell;
+import api.CellObserver;
+import api.Status;
+import hw2.Grid;
+import hw2.GridUtil;
+import hw2.MoveLog;
+
+/**
+ * Benchmarks for the grid operations in <code>GridUtil</code>.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class GridUtilBench extends Board
+{
+	/**
+	 * Grid for the benchmarks that do not change which cells are revealed
+	 */
+	private Grid grid;
+
+	/**
+	 * Observer that ignores every update
+	 */
+	private static final CellObserver IGNORE = new CellObserver()
+	{
+		@Override
+		public void update(Cell c)
+		{
+		}
+	};
+
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		grid = newGrid();
+	}
+
+	@Benchmark
+	public Grid initCounts()
+	{
+		GridUtil.initCounts(grid);
+		return grid;
+	}
+
+	@Benchmark
+	public String[] convertToStringArray()
+	{
+		return GridUtil.convertToStringArray(grid, true);
+	}
+
+	@Benchmark
+	public int countAllFlags()
+	{
+		return GridUtil.countAllFlags(grid);
+	}
+
+	@Benchmark
+	public boolean areAllCellsRevealed()
+	{
+		return GridUtil.areAllCellsRevealed(grid);
+	}
+
+	@Benchmark
+	public MoveLog clearRegion(Region region)
+	{
+		GridUtil.clearRegion(region.grid, region.row, region.col, region.history);
+		return region.history;
+	}
+
+	@Benchmark
+	public MoveLog clearRegionObserved(Region region)
+	{
+		// with a cell observer, every intermediate status of the fill is set
+		region.grid.setObserver(IGNORE);
+		GridUtil.clearRegion(region.grid, region.row, region.col, region.history);
+		region.grid.setObserver(null);
+		return region.history;
+	}
+
+	@Benchmark
+	public MoveLog revealNeighbors(Region region)
+	{
+		GridUtil.revealNeighbors(region.grid, region.row, region.col, region.history);
+		return region.history;
+	}
+
+	/**
+	 * A grid and a cell with count 0 to start revealing from. The cells
+	 * revealed by each invocation are hidden again before the next one.
+	 */
+	@State(Scope.Thread)
+	public static class Region extends Board
+	{
+		/**
+		 * Grid to reveal cells of
+		 */
+		Grid grid;
+		/**
+		 * Row of the starting cell
+		 */
+		int row;
+		/**
+		 * Column of the starting cell
+		 */
+		int col;
+		/**
+		 * Log for the cells revealed by the next invocation
+		 */
+		MoveLog history;
+		/**
+		 * Every cell a fill from the starting cell reveals, including those
+		 * with count zero, which the log leaves out
+		 */
+		int[] region;
+
+		@Setup(Level.Trial)
+		public void setUp()
+		{
+			grid = newGrid();
+
+			// the cell with count 0 nearest the center along its row
+			int x = grid.index(size / 2, size / 2);
+			while (x < grid.size() && (grid.isMine(x) || grid.getCount(x) != 0))
+			{
+				x++;
+			}
+			if (x == grid.size())
+			{
+				x = 0;
+			}
+			row = grid.getRow(x);
+			col = grid.getCol(x);
+
+			GridUtil.clearRegion(grid, row, col, null);
+			int n = 0;
+			region = new int[grid.size()];
+			for (int i = 0; i < grid.size(); i++)
+			{
+				if (!grid.isHidden(i))
+				{
+					region[n++] = i;
+				}
+			}
+			region = Arrays.copyOf(region, n);
+		}
+
+		@Setup(Level.Invocation)
+		public void hideRevealed()
+		{
+			for (int x : region)
+			{
+				grid.setStatus(x, Status.HIDDEN);
+			}
+			history = new MoveLog(grid);
+		}
+	}
+}
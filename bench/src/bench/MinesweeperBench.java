@@ -0,0 +1,128 @@
+package bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import api.Status;
+import hw2.Minesweeper;
+
+/**
+ * Benchmarks for creating and playing whole games.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MinesweeperBench extends Board
+{
+	/**
+	 * Game part way through, for the benchmarks that only query it
+	 */
+	private Minesweeper game;
+
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		game = new Minesweeper(size, size, mines(), new Random(SEED));
+		game.play(size / 2, size / 2);
+	}
+
+	/**
+	 * Random constructor: places the mines and sets the counts.
+	 */
+	@Benchmark
+	public Minesweeper create()
+	{
+		return new Minesweeper(size, size, mines(), new Random(SEED));
+	}
+
+	@Benchmark
+	public boolean isWon()
+	{
+		return game.isWon();
+	}
+
+	@Benchmark
+	public int getNumFlags()
+	{
+		return game.getNumFlags();
+	}
+
+	/**
+	 * Plays every safe cell of a new game in order, until the game is won.
+	 */
+	@Benchmark
+	public Minesweeper play(Sequence sequence)
+	{
+		Minesweeper g = sequence.game;
+		for (int x : sequence.safe)
+		{
+			if (g.isOver())
+			{
+				break;
+			}
+			int row = x / size;
+			int col = x % size;
+			if (g.getCell(row, col).getStatus() == Status.HIDDEN)
+			{
+				g.play(row, col);
+			}
+		}
+		return g;
+	}
+
+	/**
+	 * A new game for each invocation of <code>play</code>, with the same mines
+	 * every time, and the list of its safe cells.
+	 */
+	@State(Scope.Thread)
+	public static class Sequence extends Board
+	{
+		/**
+		 * Indices of the cells that are not mines
+		 */
+		int[] safe;
+		/**
+		 * Game to play
+		 */
+		Minesweeper game;
+
+		@Setup(Level.Trial)
+		public void findSafe()
+		{
+			Minesweeper g = new Minesweeper(size, size, mines(), new Random(SEED));
+			safe = new int[size * size - mines()];
+			int n = 0;
+			for (int row = 0; row < size; row++)
+			{
+				for (int col = 0; col < size; col++)
+				{
+					if (!g.getCell(row, col).isMine())
+					{
+						safe[n++] = row * size + col;
+					}
+				}
+			}
+		}
+
+		@Setup(Level.Invocation)
+		public void newGame()
+		{
+			game = new Minesweeper(size, size, mines(), new Random(SEED));
+		}
+	}
+}
@@ -1,6 +1,6 @@
 import java.util.Arrays;
 
-import api.Cell;
+import hw2.Grid;
 import hw2.GridUtil;
 import ui.TextUI;
 
@@ -16,7 +16,7 @@ public class GridTest
     };
 
     // creates a grid from the string descriptor
-    Cell[][] grid = GridUtil.createFromStringArray(test);
+    Grid grid = GridUtil.createFromStringArray(test);
     
     // convert back, with hidden information displayed
     String[] result = GridUtil.convertToStringArray(grid, true);
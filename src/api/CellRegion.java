@@ -0,0 +1,175 @@
+package api;
+
+import java.util.BitSet;
+
+/**
+ * The set of cells changed by one operation on a game.  The set is described
+ * by the smallest rectangle holding all of its cells, plus one bit for each
+ * position in the rectangle, in row-major order, that is set if the cell at
+ * that position changed.  Rows and columns are inclusive on both ends.
+ */
+public class CellRegion
+{
+  /**
+   * First row of the rectangle.
+   */
+  private final int top;
+
+  /**
+   * First column of the rectangle.
+   */
+  private final int left;
+
+  /**
+   * Last row of the rectangle.
+   */
+  private final int bottom;
+
+  /**
+   * Last column of the rectangle.
+   */
+  private final int right;
+
+  /**
+   * Bit set for each changed cell of the rectangle.
+   */
+  private final BitSet cells;
+
+  /**
+   * Constructs a region from the given rectangle and cells.  The region
+   * takes ownership of the bit set.
+   * @param givenTop
+   *   first row of the rectangle
+   * @param givenLeft
+   *   first column of the rectangle
+   * @param givenBottom
+   *   last row of the rectangle
+   * @param givenRight
+   *   last column of the rectangle
+   * @param givenCells
+   *   bit set for each changed cell, numbered in row-major order from
+   *   the top left corner of the rectangle
+   */
+  public CellRegion(int givenTop, int givenLeft, int givenBottom, int givenRight, BitSet givenCells)
+  {
+    top = givenTop;
+    left = givenLeft;
+    bottom = givenBottom;
+    right = givenRight;
+    cells = givenCells;
+  }
+
+  /**
+   * Returns the first row of the bounding rectangle.
+   * @return
+   *   top row
+   */
+  public int getTop()
+  {
+    return top;
+  }
+
+  /**
+   * Returns the first column of the bounding rectangle.
+   * @return
+   *   left column
+   */
+  public int getLeft()
+  {
+    return left;
+  }
+
+  /**
+   * Returns the last row of the bounding rectangle.
+   * @return
+   *   bottom row
+   */
+  public int getBottom()
+  {
+    return bottom;
+  }
+
+  /**
+   * Returns the last column of the bounding rectangle.
+   * @return
+   *   right column
+   */
+  public int getRight()
+  {
+    return right;
+  }
+
+  /**
+   * Returns the number of changed cells.
+   * @return
+   *   number of cells in the region
+   */
+  public int size()
+  {
+    return cells.cardinality();
+  }
+
+  /**
+   * Returns the number of the first changed cell at or after the given
+   * number, where cells are numbered in row-major order from 0 at the top
+   * left corner of the rectangle, or -1 if there is none.  This takes time
+   * proportional to the distance skipped in words of 64 cells, so listing
+   * the changed cells with
+   * <pre>
+   * for (int i = region.nextCell(0); i &gt;= 0; i = region.nextCell(i + 1))
+   * </pre>
+   * costs little more than their number, however sparse they are.
+   * @param from
+   *   number of the first cell to consider
+   * @return
+   *   number of a changed cell, or -1
+   */
+  public int nextCell(int from)
+  {
+    return cells.nextSetBit(from);
+  }
+
+  /**
+   * Returns the row of the cell with the given number, as returned by
+   * <code>nextCell</code>.
+   * @param cell
+   *   number of a cell of the rectangle
+   * @return
+   *   row of the cell
+   */
+  public int getRow(int cell)
+  {
+    return top + cell / (right - left + 1);
+  }
+
+  /**
+   * Returns the column of the cell with the given number, as returned by
+   * <code>nextCell</code>.
+   * @param cell
+   *   number of a cell of the rectangle
+   * @return
+   *   column of the cell
+   */
+  public int getCol(int cell)
+  {
+    return left + cell % (right - left + 1);
+  }
+
+  /**
+   * Returns whether the cell at the given position changed.
+   * @param row
+   *   row of the cell
+   * @param col
+   *   column of the cell
+   * @return
+   *   true if the cell is in the region, false otherwise
+   */
+  public boolean contains(int row, int col)
+  {
+    if (row < top || row > bottom || col < left || col > right)
+    {
+      return false;
+    }
+    return cells.get((row - top) * (right - left + 1) + (col - left));
+  }
+}
@@ -0,0 +1,10 @@
+package api;
+
+/**
+ * Interface representing a component that may be notified once at the end of
+ * each operation on a game, with all the cells that operation changed.
+ */
+public interface RegionObserver
+{
+  void cellsChanged(CellRegion region);
+}
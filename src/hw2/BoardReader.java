@@ -0,0 +1,615 @@
+package hw2;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import api.Mark;
+
+/**
+ * Reads board layouts from files and <code>Reader</code>s, without building a
+ * <code>String[]</code> descriptor first.
+ * <p>
+ * A plain layout has one line per row, in the format taken by
+ * <code>GridUtil.createFromStringArray</code>: <code>MINE_CHAR</code> for a
+ * mine and any other character for a non-mine. Lines may end with
+ * <code>\n</code> or <code>\r\n</code>, and all must have the same length.
+ * <p>
+ * A run-length-encoded layout starts with a line <code>#rle rows cols</code>.
+ * What follows is a sequence of runs, each an optional count (1 if absent)
+ * followed by <code>-</code> for that many non-mines, <code>MINE_CHAR</code>
+ * for that many mines, or <code>$</code> to end that many rows. A row is
+ * padded with non-mines when it ends, as are rows not given at all, and
+ * <code>!</code> or the end of the input ends the layout. Whitespace between
+ * runs is ignored. A board that is mostly empty therefore takes a few bytes
+ * per mine.
+ * <p>
+ * Either way, the layout is read in a single pass. The mines of the last
+ * three rows read are kept in a sliding window, and as soon as the row after
+ * a row is known, the row's counts are computed and its cells written in the
+ * packed format of <code>Grid</code>. Files are read through a memory map.
+ * <p>
+ * The packed cells are written into one array. For a run-length-encoded
+ * layout, and for a plain layout in a file whose lines all have the same
+ * length, the array is allocated at its final size from the header or the
+ * file size, so the peak memory is the packed grid plus three rows. A plain
+ * layout from a <code>Reader</code> has no known size, so the array grows by
+ * doubling and is trimmed at the end, which can take up to about three times
+ * the size of the grid.
+ */
+public class BoardReader
+{
+	/**
+	 * First word of a run-length-encoded layout
+	 */
+	public static final String RLE_HEADER = "#rle";
+
+	/**
+	 * Largest part of a file mapped at once
+	 */
+	private static final int MAP_SIZE = 1 << 30;
+
+	/**
+	 * Number of characters read from a <code>Reader</code> at once
+	 */
+	private static final int READ_SIZE = 1 << 16;
+
+	/**
+	 * Reads a game from the layout in the given file. Initially all cells are
+	 * hidden and the counts are correct.
+	 *
+	 * @param path
+	 *            file to read
+	 * @return new game
+	 * @throws IOException
+	 *             if the file cannot be read or does not hold a valid layout
+	 */
+	public static Minesweeper read(Path path) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			return newGame(readGrid(new MappedInput(channel)));
+		}
+	}
+
+	/**
+	 * Reads a game from the layout given by a <code>Reader</code>. Initially
+	 * all cells are hidden and the counts are correct. The reader is not
+	 * closed.
+	 *
+	 * @param in
+	 *            source of the layout
+	 * @return new game
+	 * @throws IOException
+	 *             if the layout cannot be read or is not valid
+	 */
+	public static Minesweeper read(Reader in) throws IOException
+	{
+		return newGame(readGrid(new ReaderInput(in)));
+	}
+
+	/**
+	 * Returns a game for the given grid, whose counts are already correct.
+	 *
+	 * @param grid
+	 *            grid of the game
+	 * @return new game
+	 */
+	private static Minesweeper newGame(Grid grid)
+	{
+		return new Minesweeper(grid, grid.size() - grid.getHiddenSafeCount(), 0, false, new MoveLog(grid));
+	}
+
+	/**
+	 * Reads a layout in either format.
+	 *
+	 * @param in
+	 *            source of the layout
+	 * @return new grid with counts
+	 * @throws IOException
+	 *             if the layout cannot be read or is not valid
+	 */
+	private static Grid readGrid(Input in) throws IOException
+	{
+		StringBuilder first = new StringBuilder();
+		int ch = in.read();
+		while (ch >= 0 && ch != '\n')
+		{
+			first.append((char) ch);
+			ch = in.read();
+		}
+		int length = first.length();
+		boolean crlf = length > 0 && first.charAt(length - 1) == '\r';
+		if (crlf)
+		{
+			first.setLength(--length);
+		}
+
+		if (first.toString().startsWith(RLE_HEADER))
+		{
+			String[] words = first.toString().trim().split("\\s+");
+			if (words.length != 3 || !words[0].equals(RLE_HEADER))
+			{
+				throw new IOException("Invalid header: " + first);
+			}
+			int rows;
+			int cols;
+			try
+			{
+				rows = Integer.parseInt(words[1]);
+				cols = Integer.parseInt(words[2]);
+			}
+			catch (NumberFormatException e)
+			{
+				throw new IOException("Invalid header: " + first, e);
+			}
+			return readRle(in, rows, cols);
+		}
+		if (length == 0)
+		{
+			throw new IOException("Empty layout");
+		}
+		return readPlain(in, first, crlf ? length + 2 : length + 1);
+	}
+
+	/**
+	 * Reads the rest of a plain layout, whose first row has been read.
+	 *
+	 * @param in
+	 *            source of the layout
+	 * @param first
+	 *            first row
+	 * @param lineLength
+	 *            length of the first line, including its line end
+	 * @return new grid with counts
+	 * @throws IOException
+	 *             if the layout cannot be read or is not valid
+	 */
+	private static Grid readPlain(Input in, CharSequence first, int lineLength) throws IOException
+	{
+		int cols = first.length();
+		// if the other lines are as long as the first, this is the exact
+		// number of rows, whether or not the last line has a line end
+		long remaining = in.remaining();
+		int expectedRows = -1;
+		if (remaining >= 0)
+		{
+			expectedRows = (int) Math.min(1 + (remaining + lineLength - 1) / lineLength, Integer.MAX_VALUE / cols);
+		}
+		Window window = new Window(cols, expectedRows);
+		byte[] row = window.next();
+		for (int col = 0; col < cols; col++)
+		{
+			row[col] = (byte) (first.charAt(col) == GridUtil.MINE_CHAR ? 1 : 0);
+		}
+		window.commit();
+
+		int ch = in.read();
+		while (ch >= 0)
+		{
+			row = window.next();
+			int col = 0;
+			while (ch >= 0 && ch != '\n')
+			{
+				// a carriage return only ends the line right before a line
+				// feed or the end of the input
+				int next = in.read();
+				if (ch == '\r' && (next == '\n' || next < 0))
+				{
+					ch = next;
+					break;
+				}
+				if (col == cols)
+				{
+					throw new IOException("Row " + window.rows() + " is longer than " + cols + " columns");
+				}
+				row[col++] = (byte) (ch == GridUtil.MINE_CHAR ? 1 : 0);
+				ch = next;
+			}
+			if (col != cols)
+			{
+				throw new IOException("Row " + window.rows() + " has " + col + " columns, expected " + cols);
+			}
+			window.commit();
+			if (ch >= 0)
+			{
+				ch = in.read();
+			}
+		}
+		return window.finish();
+	}
+
+	/**
+	 * Reads the runs of a run-length-encoded layout, whose header has been
+	 * read.
+	 *
+	 * @param in
+	 *            source of the layout
+	 * @param rows
+	 *            number of rows
+	 * @param cols
+	 *            number of columns
+	 * @return new grid with counts
+	 * @throws IOException
+	 *             if the layout cannot be read or is not valid
+	 */
+	private static Grid readRle(Input in, int rows, int cols) throws IOException
+	{
+		if (rows <= 0 || cols <= 0 || (long) rows * cols > Integer.MAX_VALUE)
+		{
+			throw new IOException("Invalid grid size " + rows + "x" + cols);
+		}
+		Window window = new Window(cols, rows);
+		byte[] row = window.next();
+		Arrays.fill(row, (byte) 0);
+		int col = 0;
+		long count = -1;
+
+		int ch = in.read();
+		while (ch >= 0 && ch != '!')
+		{
+			if (ch >= '0' && ch <= '9')
+			{
+				count = (count < 0 ? 0 : count * 10) + (ch - '0');
+				if (count > Integer.MAX_VALUE)
+				{
+					throw new IOException("Run too long");
+				}
+			}
+			else if (ch == '-' || ch == GridUtil.MINE_CHAR)
+			{
+				int n = count < 0 ? 1 : (int) count;
+				if (row == null)
+				{
+					throw new IOException("More than " + rows + " rows");
+				}
+				if (n > cols - col)
+				{
+					throw new IOException("Row " + window.rows() + " is longer than " + cols + " columns");
+				}
+				if (ch == GridUtil.MINE_CHAR)
+				{
+					Arrays.fill(row, col, col + n, (byte) 1);
+				}
+				col += n;
+				count = -1;
+			}
+			else if (ch == '$')
+			{
+				long n = count < 0 ? 1 : count;
+				if (row == null || n > rows - window.rows())
+				{
+					throw new IOException("More than " + rows + " rows");
+				}
+				window.commit();
+				for (long k = 1; k < n; k++)
+				{
+					row = window.next();
+					Arrays.fill(row, (byte) 0);
+					window.commit();
+				}
+				// only open another row if there is one
+				row = null;
+				if (window.rows() < rows)
+				{
+					row = window.next();
+					Arrays.fill(row, (byte) 0);
+				}
+				col = 0;
+				count = -1;
+			}
+			else if (!Character.isWhitespace(ch))
+			{
+				throw new IOException("Unexpected character '" + (char) ch + "' in row " + window.rows());
+			}
+			ch = in.read();
+		}
+
+		// the row being filled, if any, and any rows not given are padded
+		if (row != null)
+		{
+			window.commit();
+		}
+		while (window.rows() < rows)
+		{
+			row = window.next();
+			Arrays.fill(row, (byte) 0);
+			window.commit();
+		}
+		return window.finish();
+	}
+
+	/**
+	 * The last three rows of mines read, and the packed cells of the rows
+	 * before them. Each new row is filled into the array returned by
+	 * <code>next</code> and then added with <code>commit</code>, at which
+	 * point the counts of the row before it are computed.
+	 */
+	private static class Window
+	{
+		/**
+		 * Number of columns
+		 */
+		private final int cols;
+		/**
+		 * Mines of the row two before the last one committed, one byte per
+		 * cell that is 1 for a mine
+		 */
+		private byte[] above;
+		/**
+		 * Mines of the row before the last one committed
+		 */
+		private byte[] middle;
+		/**
+		 * Mines of the last row committed, or of the row being filled
+		 */
+		private byte[] below;
+		/**
+		 * Sum of <code>above</code>, <code>middle</code> and
+		 * <code>below</code> in each column, with a zero at both ends
+		 */
+		private final int[] sums;
+		/**
+		 * Packed cells of the rows whose counts are known
+		 */
+		private byte[] packed;
+		/**
+		 * Number of rows committed
+		 */
+		private int rows;
+		/**
+		 * Number of mines committed
+		 */
+		private int mines;
+
+		/**
+		 * Constructs an empty window.
+		 *
+		 * @param cols
+		 *            number of columns
+		 * @param expectedRows
+		 *            number of rows to make room for, or -1 if not known in
+		 *            advance
+		 */
+		Window(int cols, int expectedRows)
+		{
+			this.cols = cols;
+			above = new byte[cols];
+			middle = new byte[cols];
+			below = new byte[cols];
+			sums = new int[cols + 2];
+			packed = new byte[expectedRows >= 0 ? expectedRows * cols : Math.max(cols, READ_SIZE)];
+		}
+
+		/**
+		 * Returns the array to fill with the mines of the next row.
+		 *
+		 * @return one byte per cell
+		 */
+		byte[] next()
+		{
+			// the row two before the one about to be filled is no longer needed
+			byte[] free = above;
+			above = middle;
+			middle = below;
+			below = free;
+			return below;
+		}
+
+		/**
+		 * Adds the row filled since <code>next</code> was called, and writes
+		 * the cells of the row before it.
+		 *
+		 * @throws IOException
+		 *             if the grid would have too many cells
+		 */
+		void commit() throws IOException
+		{
+			if ((long) (rows + 1) * cols > Integer.MAX_VALUE)
+			{
+				throw new IOException("Too many cells");
+			}
+			rows++;
+			for (int col = 0; col < cols; col++)
+			{
+				mines += below[col];
+			}
+			if (rows > 1)
+			{
+				emit(rows - 2);
+			}
+		}
+
+		/**
+		 * Returns the number of rows committed.
+		 *
+		 * @return number of rows
+		 */
+		int rows()
+		{
+			return rows;
+		}
+
+		/**
+		 * Writes the cells of the last row committed, and returns the grid.
+		 *
+		 * @return new grid with counts
+		 * @throws IOException
+		 *             if there are no rows
+		 */
+		Grid finish() throws IOException
+		{
+			if (rows == 0)
+			{
+				throw new IOException("Empty layout");
+			}
+			next();
+			Arrays.fill(below, (byte) 0);
+			emit(rows - 1);
+
+			int size = rows * cols;
+			if (packed.length != size)
+			{
+				packed = Arrays.copyOf(packed, size);
+			}
+			int[] marks = new int[Mark.values().length];
+			marks[Mark.NONE.ordinal()] = size;
+			return new Grid(rows, cols, packed, size - mines, marks);
+		}
+
+		/**
+		 * Writes the cells of the given row, which is <code>middle</code>,
+		 * with <code>above</code> and <code>below</code> around it.
+		 *
+		 * @param row
+		 *            number of the row
+		 */
+		private void emit(int row)
+		{
+			int start = row * cols;
+			if (start + cols > packed.length)
+			{
+				packed = Arrays.copyOf(packed, (int) Math.min(Integer.MAX_VALUE, Math.max((long) start + cols,
+						2L * packed.length)));
+			}
+			// before row 0, above is one of the arrays never filled, so all
+			// zeros, as is below after the last row
+			for (int col = 0; col < cols; col++)
+			{
+				sums[col + 1] = above[col] + middle[col] + below[col];
+			}
+			for (int col = 0; col < cols; col++)
+			{
+				boolean mine = middle[col] != 0;
+				packed[start + col] = Grid.pack(mine, mine ? -1 : sums[col] + sums[col + 1] + sums[col + 2]);
+			}
+		}
+	}
+
+	/**
+	 * Source of the characters of a layout.
+	 */
+	private static abstract class Input
+	{
+		/**
+		 * Returns the next character, or -1 at the end.
+		 *
+		 * @return character read
+		 * @throws IOException
+		 *             if the source cannot be read
+		 */
+		abstract int read() throws IOException;
+
+		/**
+		 * Returns the number of characters left to read, or -1 if that is not
+		 * known.
+		 *
+		 * @return number of characters left
+		 */
+		long remaining()
+		{
+			return -1;
+		}
+	}
+
+	/**
+	 * Reads the bytes of a file, as characters, through memory maps of up to
+	 * <code>MAP_SIZE</code> bytes.
+	 */
+	private static class MappedInput extends Input
+	{
+		/**
+		 * Channel of the file
+		 */
+		private final FileChannel channel;
+		/**
+		 * Size of the file
+		 */
+		private final long size;
+		/**
+		 * Number of bytes of the file mapped so far
+		 */
+		private long mapped;
+		/**
+		 * Part of the file mapped last, or null before the first read
+		 */
+		private MappedByteBuffer buffer;
+
+		MappedInput(FileChannel givenChannel) throws IOException
+		{
+			channel = givenChannel;
+			size = channel.size();
+		}
+
+		@Override
+		int read() throws IOException
+		{
+			if (buffer == null || !buffer.hasRemaining())
+			{
+				if (mapped == size)
+				{
+					return -1;
+				}
+				long length = Math.min(MAP_SIZE, size - mapped);
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapped, length);
+				mapped += length;
+			}
+			return buffer.get() & 0xFF;
+		}
+
+		@Override
+		long remaining()
+		{
+			return size - mapped + (buffer == null ? 0 : buffer.remaining());
+		}
+	}
+
+	/**
+	 * Reads the characters of a <code>Reader</code> through a buffer.
+	 */
+	private static class ReaderInput extends Input
+	{
+		/**
+		 * Source of the characters
+		 */
+		private final Reader in;
+		/**
+		 * Characters read but not yet returned, from position to limit
+		 */
+		private final char[] buffer;
+		/**
+		 * Position in the buffer of the next character
+		 */
+		private int position;
+		/**
+		 * Number of characters in the buffer
+		 */
+		private int limit;
+
+		ReaderInput(Reader givenIn)
+		{
+			in = givenIn;
+			buffer = new char[READ_SIZE];
+		}
+
+		@Override
+		int read() throws IOException
+		{
+			while (position == limit)
+			{
+				limit = in.read(buffer, 0, buffer.length);
+				position = 0;
+				if (limit < 0)
+				{
+					limit = 0;
+					return -1;
+				}
+			}
+			return buffer[position++];
+		}
+	}
+}
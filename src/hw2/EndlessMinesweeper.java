@@ -0,0 +1,574 @@
+package hw2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import api.Cell;
+import api.CellObserver;
+import api.Mark;
+import api.Status;
+
+/**
+ * A minesweeper game on a board with no edges. The board is split into square
+ * chunks of <code>CHUNK_SIZE</code> cells on a side, and a chunk is only
+ * created, as a <code>Grid</code>, when a move first touches it, so memory
+ * grows with the area explored rather than with the board.
+ * <p>
+ * Whether a cell is a mine is a pure function of the world seed, the
+ * coordinates of its chunk and its position in the chunk, so a chunk's mines
+ * are the same whenever it is created. The counts along the edges of a chunk
+ * are computed from the same function, without creating the neighboring
+ * chunks.
+ * <p>
+ * Rows and columns may be any <code>int</code>, including negative ones, and
+ * wrap around at the ends of the <code>int</code> range. There is no way to
+ * win the whole board, so instead a chunk is cleared once all of its non-mine
+ * cells are revealed, at which point its mines are flagged. The game is over
+ * when a mine is revealed, and the mines of every chunk created so far are
+ * then shown.
+ * <p>
+ * Below a certain density, regions of cells with count zero stop being finite
+ * and a flood fill could run forever, so the density must be at least
+ * <code>MIN_DENSITY</code>.
+ */
+public class EndlessMinesweeper
+{
+	/**
+	 * log2 of <code>CHUNK_SIZE</code>
+	 */
+	private static final int CHUNK_BITS = 6;
+	/**
+	 * Number of rows and of columns in a chunk
+	 */
+	public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	/**
+	 * Smallest mine density allowed
+	 */
+	public static final double MIN_DENSITY = 0.1;
+	/**
+	 * Odd constant from the golden ratio, used to spread out consecutive
+	 * values before mixing
+	 */
+	private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+	/**
+	 * Seed the mines of every chunk are derived from
+	 */
+	private long seed;
+	/**
+	 * A cell is a mine when its hash, as an unsigned 53-bit value, is below
+	 * this
+	 */
+	private final long threshold;
+	/**
+	 * Chunks created so far, by <code>key</code>
+	 */
+	private final HashMap<Long, Grid> chunks;
+	/**
+	 * Number of clicks made
+	 */
+	private int clicks;
+	/**
+	 * Number of cells revealed
+	 */
+	private long revealed;
+	/**
+	 * Number of chunks whose non-mine cells are all revealed
+	 */
+	private int cleared;
+	/**
+	 * Whether a mine has been revealed
+	 */
+	private boolean over;
+	/**
+	 * All revealed cells, in the order they were revealed
+	 */
+	private final ArrayList<Cell> history;
+	/**
+	 * Observer set on every chunk, or null
+	 */
+	private CellObserver observer;
+
+	/**
+	 * Constructs an endless game. Initially all cells are hidden.
+	 *
+	 * @param worldSeed
+	 *            seed the mines are derived from
+	 * @param density
+	 *            probability of each cell being a mine
+	 * @throws IllegalArgumentException
+	 *             if the density is less than <code>MIN_DENSITY</code> or not
+	 *             less than 1
+	 */
+	public EndlessMinesweeper(long worldSeed, double density)
+	{
+		if (!(density >= MIN_DENSITY && density < 1))
+		{
+			throw new IllegalArgumentException("Invalid mine density " + density);
+		}
+		seed = worldSeed;
+		threshold = (long) (density * (1L << 53));
+		chunks = new HashMap<Long, Grid>();
+		history = new ArrayList<Cell>();
+	}
+
+	/**
+	 * Returns the seed the mines are currently derived from. This is the seed
+	 * given to the constructor unless the first click had to move the mines.
+	 *
+	 * @return world seed
+	 */
+	public long getSeed()
+	{
+		return seed;
+	}
+
+	/**
+	 * Returns the number of clicks for revealing a cell that have been made.
+	 *
+	 * @return number of clicks
+	 */
+	public int getClicks()
+	{
+		return clicks;
+	}
+
+	/**
+	 * Returns the number of cells revealed so far.
+	 *
+	 * @return number of revealed cells
+	 */
+	public long getRevealedCount()
+	{
+		return revealed;
+	}
+
+	/**
+	 * Returns the number of chunks whose non-mine cells have all been
+	 * revealed.
+	 *
+	 * @return number of cleared chunks
+	 */
+	public int getClearedChunks()
+	{
+		return cleared;
+	}
+
+	/**
+	 * Returns the number of chunks created so far.
+	 *
+	 * @return number of chunks in memory
+	 */
+	public int getLoadedChunks()
+	{
+		return chunks.size();
+	}
+
+	/**
+	 * Returns true if a mine has been revealed, false otherwise.
+	 *
+	 * @return true if the game is over, false otherwise
+	 */
+	public boolean isOver()
+	{
+		return over;
+	}
+
+	/**
+	 * Returns a reference to the list of all revealed cells, in the order they
+	 * were revealed.
+	 * <p>
+	 * NOTE: The caller of this method should normally not modify the returned
+	 * list or the cells it contains.
+	 *
+	 * @return list of all revealed cells
+	 */
+	public ArrayList<Cell> getHistory()
+	{
+		return history;
+	}
+
+	/**
+	 * Returns whether the cell at the given position is a mine. This never
+	 * creates a chunk.
+	 *
+	 * @param row
+	 *            given position row
+	 * @param col
+	 *            given position column
+	 * @return true if the cell is a mine, false otherwise
+	 */
+	public boolean isMine(int row, int col)
+	{
+		return isMine(chunkSeed(row >> CHUNK_BITS, col >> CHUNK_BITS), local(row, col));
+	}
+
+	/**
+	 * Returns the number of mines next to the cell at the given position. This
+	 * never creates a chunk.
+	 *
+	 * @param row
+	 *            given position row
+	 * @param col
+	 *            given position column
+	 * @return number of neighboring mines
+	 */
+	public int countNeighboringMines(int row, int col)
+	{
+		int count = 0;
+		for (int dr = -1; dr <= 1; dr++)
+		{
+			for (int dc = -1; dc <= 1; dc++)
+			{
+				if ((dr != 0 || dc != 0) && isMine(row + dr, col + dc))
+				{
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the cell at the given position. If its chunk has been created,
+	 * the cell is a view onto it and always reflects the current state of that
+	 * position. Otherwise the cell is a hidden, unmarked copy, and changing it
+	 * has no effect on the game.
+	 * <p>
+	 * NOTE: The caller of this method should normally not modify the returned
+	 * cell.
+	 *
+	 * @param row
+	 *            given position row
+	 * @param col
+	 *            given position column
+	 * @return cell at the given position
+	 */
+	public Cell getCell(int row, int col)
+	{
+		Grid chunk = chunks.get(key(row >> CHUNK_BITS, col >> CHUNK_BITS));
+		if (chunk != null)
+		{
+			return chunk.getCell(local(row, col));
+		}
+		Cell c = new Cell(row, col);
+		c.setIsMine(isMine(row, col));
+		c.setCount(isMine(row, col) ? -1 : countNeighboringMines(row, col));
+		return c;
+	}
+
+	/**
+	 * Toggle the mark value on the cell at the given position. The values
+	 * cycle through <code>Mark.NONE</code>, <code>Mark.FLAG</code>, and
+	 * <code>Mark.QUESTION_MARK</code>, in that order.
+	 *
+	 * @param row
+	 *            given position row
+	 * @param col
+	 *            given position column
+	 */
+	public void toggleMark(int row, int col)
+	{
+		Grid chunk = chunk(row, col);
+		int c = local(row, col);
+		if (chunk.getMark(c) == Mark.NONE)
+		{
+			chunk.setMark(c, Mark.FLAG);
+		}
+		else if (chunk.getMark(c) == Mark.FLAG)
+		{
+			chunk.setMark(c, Mark.QUESTION_MARK);
+		}
+		else
+		{
+			chunk.setMark(c, Mark.NONE);
+		}
+	}
+
+	/**
+	 * Processes a selection by the player to reveal the cell at the given
+	 * position. Revealing a mine ends the game, and revealing a cell with
+	 * count zero reveals the region around it, across chunk edges. If the
+	 * first selection is a mine, the world seed is changed until it is not,
+	 * and any chunks already created get the new mines, keeping their marks.
+	 * This method does nothing if the game is over or the cell is already
+	 * revealed.
+	 *
+	 * @param row
+	 *            given position row
+	 * @param col
+	 *            given position column
+	 */
+	public void play(int row, int col)
+	{
+		if (over)
+		{
+			return;
+		}
+		if (clicks == 0 && isMine(row, col))
+		{
+			do
+			{
+				seed = mix(seed + GOLDEN);
+			} while (isMine(row, col));
+			for (Grid chunk : chunks.values())
+			{
+				fill(chunk, row(chunk), col(chunk));
+			}
+		}
+
+		Grid chunk = chunk(row, col);
+		int c = local(row, col);
+		if (!chunk.isHidden(c))
+		{
+			return;
+		}
+		clicks++;
+		reveal(chunk, c);
+		if (chunk.isMine(c))
+		{
+			for (Grid g : chunks.values())
+			{
+				GridUtil.revealAllMines(g);
+			}
+			over = true;
+		}
+		else if (chunk.getCount(c) == 0)
+		{
+			clearRegion(row, col);
+		}
+	}
+
+	/**
+	 * Sets the given <code>CellObserver</code> to be notified when the status
+	 * of any cell changes, in chunks already created and in those created
+	 * later.
+	 *
+	 * @param givenObserver
+	 *            reference to a <code>CellObserver</code>, or null for none
+	 */
+	public void setObserver(CellObserver givenObserver)
+	{
+		observer = givenObserver;
+		for (Grid chunk : chunks.values())
+		{
+			chunk.setObserver(givenObserver);
+		}
+	}
+
+	/**
+	 * Reveals every cell with count zero reachable from the given one by moves
+	 * up, left, down and right through cells with count zero, along with all
+	 * neighbors of those cells that have a count greater than zero, the same
+	 * region <code>GridUtil.clearRegion</code> reveals. The cell at the given
+	 * position must already be revealed. Cells are kept on an explicit stack,
+	 * so the region can be any size.
+	 *
+	 * @param row
+	 *            row of a revealed cell with count zero
+	 * @param col
+	 *            column of a revealed cell with count zero
+	 */
+	private void clearRegion(int row, int col)
+	{
+		int[] stack = new int[64];
+		int top = 0;
+		stack[top++] = row;
+		stack[top++] = col;
+		while (top > 0)
+		{
+			int c = stack[--top];
+			int r = stack[--top];
+			for (int dr = -1; dr <= 1; dr++)
+			{
+				for (int dc = -1; dc <= 1; dc++)
+				{
+					Grid chunk = chunk(r + dr, c + dc);
+					int x = local(r + dr, c + dc);
+					if (!chunk.isHidden(x) || chunk.isMine(x))
+					{
+						continue;
+					}
+					if (chunk.getCount(x) > 0)
+					{
+						reveal(chunk, x);
+					}
+					else if (dr == 0 || dc == 0)
+					{
+						reveal(chunk, x);
+						if (top + 2 > stack.length)
+						{
+							stack = Arrays.copyOf(stack, stack.length * 2);
+						}
+						stack[top++] = r + dr;
+						stack[top++] = c + dc;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reveals a hidden cell, adds it to the history, and flags the mines of
+	 * its chunk if that was the chunk's last hidden non-mine cell.
+	 *
+	 * @param chunk
+	 *            chunk of the cell
+	 * @param x
+	 *            index of the cell in the chunk
+	 */
+	private void reveal(Grid chunk, int x)
+	{
+		chunk.setStatus(x, Status.REVEALED);
+		history.add(chunk.getCell(x));
+		revealed++;
+		if (!chunk.isMine(x) && chunk.getHiddenSafeCount() == 0)
+		{
+			cleared++;
+			GridUtil.flagAllMines(chunk);
+		}
+	}
+
+	/**
+	 * Returns the chunk holding the cell at the given position, creating it if
+	 * needed.
+	 *
+	 * @param row
+	 *            given position row
+	 * @param col
+	 *            given position column
+	 * @return chunk of the cell
+	 */
+	private Grid chunk(int row, int col)
+	{
+		int cr = row >> CHUNK_BITS;
+		int cc = col >> CHUNK_BITS;
+		Long k = key(cr, cc);
+		Grid chunk = chunks.get(k);
+		if (chunk == null)
+		{
+			chunk = new Grid(CHUNK_SIZE, CHUNK_SIZE, cr << CHUNK_BITS, cc << CHUNK_BITS);
+			fill(chunk, cr, cc);
+			chunk.setObserver(observer);
+			chunks.put(k, chunk);
+		}
+		return chunk;
+	}
+
+	/**
+	 * Sets the mines and counts of a chunk from the current seed. The mines in
+	 * the ring of cells around the chunk are computed too, so the counts along
+	 * its edges are right without creating its neighbors.
+	 *
+	 * @param chunk
+	 *            chunk to fill
+	 * @param cr
+	 *            row of the chunk among chunks
+	 * @param cc
+	 *            column of the chunk among chunks
+	 */
+	private void fill(Grid chunk, int cr, int cc)
+	{
+		// mines of the chunk and the ring around it, offset by one
+		int side = CHUNK_SIZE + 2;
+		boolean[] mines = new boolean[side * side];
+		int top = cr << CHUNK_BITS;
+		int left = cc << CHUNK_BITS;
+		long s = chunkSeed(cr, cc);
+		for (int i = 0; i < side; i++)
+		{
+			for (int j = 0; j < side; j++)
+			{
+				boolean inside = i > 0 && i <= CHUNK_SIZE && j > 0 && j <= CHUNK_SIZE;
+				mines[i * side + j] = inside ? isMine(s, (i - 1) * CHUNK_SIZE + j - 1)
+						: isMine(top + i - 1, left + j - 1);
+			}
+		}
+
+		for (int i = 1; i <= CHUNK_SIZE; i++)
+		{
+			for (int j = 1; j <= CHUNK_SIZE; j++)
+			{
+				int x = (i - 1) * CHUNK_SIZE + j - 1;
+				boolean mine = mines[i * side + j];
+				chunk.setMine(x, mine);
+				int count = -1;
+				if (!mine)
+				{
+					count = 0;
+					for (int a = i - 1; a <= i + 1; a++)
+					{
+						for (int b = j - 1; b <= j + 1; b++)
+						{
+							if (mines[a * side + b])
+							{
+								count++;
+							}
+						}
+					}
+				}
+				chunk.setCount(x, count);
+			}
+		}
+	}
+
+	/**
+	 * Returns the row among chunks of the given chunk.
+	 */
+	private static int row(Grid chunk)
+	{
+		return chunk.getCell(0).getRow() >> CHUNK_BITS;
+	}
+
+	/**
+	 * Returns the column among chunks of the given chunk.
+	 */
+	private static int col(Grid chunk)
+	{
+		return chunk.getCell(0).getCol() >> CHUNK_BITS;
+	}
+
+	/**
+	 * Returns the index within its chunk of the cell at the given position.
+	 */
+	private static int local(int row, int col)
+	{
+		return ((row & (CHUNK_SIZE - 1)) << CHUNK_BITS) | (col & (CHUNK_SIZE - 1));
+	}
+
+	/**
+	 * Returns the key of a chunk in <code>chunks</code>.
+	 */
+	private static Long key(int cr, int cc)
+	{
+		return ((long) cr << 32) | (cc & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Returns the seed of the mines of a chunk.
+	 */
+	private long chunkSeed(int cr, int cc)
+	{
+		return mix(mix(seed + cr * GOLDEN) + cc * GOLDEN);
+	}
+
+	/**
+	 * Returns whether the cell with the given index in the chunk with the given
+	 * seed is a mine.
+	 */
+	private boolean isMine(long chunkSeed, int index)
+	{
+		return mix(chunkSeed + (index + 1) * GOLDEN) >>> 11 < threshold;
+	}
+
+	/**
+	 * Scrambles the bits of a value, using the finalizer of SplitMix64.
+	 */
+	private static long mix(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
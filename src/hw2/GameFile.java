@@ -0,0 +1,227 @@
+package hw2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import api.Mark;
+
+/**
+ * Saves and restores <code>Minesweeper</code> games in a compact binary file.
+ * <p>
+ * A file starts with a fixed-size header: a magic number, the format version,
+ * the size of the grid, the number of mines and clicks, whether the game is
+ * over, the number of entries, bytes and moves of the history, the grid's
+ * running counts of hidden non-mine cells and of marks, and a CRC-32 checksum
+ * of everything else in the file. The cells follow, one byte each in exactly
+ * the packed layout <code>Grid</code> uses in memory, then the history in
+ * exactly the encoding <code>MoveLog</code> uses, and then the first entry of
+ * each move as an <code>int</code>. All values are big-endian.
+ * <p>
+ * Loading maps the file with <code>FileChannel.map</code> and copies the cells
+ * straight into the array of a new grid. Since the running counts are in the
+ * header, nothing is recomputed and no per-cell objects are created: the time
+ * taken is that of checking the checksum, one bulk copy, and one pass over the
+ * history to find its checkpoints, all of which run at memory speed. Cells
+ * part way through a flood fill are saved as revealed.
+ */
+public class GameFile
+{
+	/**
+	 * First four bytes of every file: "MSWP"
+	 */
+	private static final int MAGIC = 0x4D535750;
+	/**
+	 * Version of the format written by <code>save</code>
+	 */
+	public static final int VERSION = 2;
+	/**
+	 * Number of bytes in the header
+	 */
+	private static final int HEADER_SIZE = 56;
+	/**
+	 * Position of the checksum in the header
+	 */
+	private static final int CHECKSUM_OFFSET = 52;
+
+	/**
+	 * Bit of the flags in the header that is set if the game is over
+	 */
+	private static final int OVER_FLAG = 1;
+
+	private GameFile()
+	{
+	}
+
+	/**
+	 * Saves the given game to a file, replacing it if it exists.
+	 *
+	 * @param game
+	 *            game to save
+	 * @param path
+	 *            file to write
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public static void save(Minesweeper game, Path path) throws IOException
+	{
+		Grid grid = game.getGrid();
+		MoveLog history = game.getMoveLog();
+		int[] starts = history.getMoveStarts();
+
+		ByteBuffer cells = ByteBuffer.wrap(grid.getPacked());
+		ByteBuffer log = ByteBuffer.wrap(history.getEncoded(), 0, history.getEncodedLength());
+		ByteBuffer moves = ByteBuffer.allocate(4 * starts.length);
+		moves.asIntBuffer().put(starts);
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(grid.getRows());
+		header.putInt(grid.getColumns());
+		header.putInt(game.getNumMines());
+		header.putInt(game.getClicks());
+		header.putInt(game.isOver() ? OVER_FLAG : 0);
+		header.putInt(history.size());
+		header.putInt(history.getEncodedLength());
+		header.putInt(starts.length);
+		header.putInt(grid.getHiddenSafeCount());
+		header.putInt(grid.getMarkCount(Mark.FLAG));
+		header.putInt(grid.getMarkCount(Mark.QUESTION_MARK));
+		header.putInt(checksum(header, cells, log, moves));
+		header.flip();
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			ByteBuffer[] parts = { header, cells, log, moves };
+			while (header.hasRemaining() || cells.hasRemaining() || log.hasRemaining() || moves.hasRemaining())
+			{
+				channel.write(parts);
+			}
+		}
+	}
+
+	/**
+	 * Restores a game saved by <code>save</code>. The restored game has no
+	 * <code>Random</code>, which only matters if no click has been made yet.
+	 *
+	 * @param path
+	 *            file to read
+	 * @return the restored game
+	 * @throws IOException
+	 *             if the file cannot be read, is not a saved game, has an
+	 *             unsupported version or fails its checksum
+	 */
+	public static Minesweeper load(Path path) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			if (channel.size() < HEADER_SIZE)
+			{
+				throw new IOException("Not a saved game: " + path);
+			}
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			if (header.getInt() != MAGIC)
+			{
+				throw new IOException("Not a saved game: " + path);
+			}
+			int version = header.getInt();
+			if (version != VERSION)
+			{
+				throw new IOException("Unsupported saved game version " + version + ": " + path);
+			}
+			int rows = header.getInt();
+			int cols = header.getInt();
+			int mines = header.getInt();
+			int clicks = header.getInt();
+			int flags = header.getInt();
+			int historySize = header.getInt();
+			int logLength = header.getInt();
+			int moveCount = header.getInt();
+			int hiddenSafe = header.getInt();
+			int flagged = header.getInt();
+			int questioned = header.getInt();
+			int expected = header.getInt();
+
+			long size = (long) rows * cols;
+			if (rows <= 0 || cols <= 0 || size > Integer.MAX_VALUE || historySize < 0 || logLength < 0
+					|| moveCount < 0 || channel.size() != HEADER_SIZE + size + logLength + 4L * moveCount)
+			{
+				throw new IOException("Corrupt saved game: " + path);
+			}
+			MappedByteBuffer cells = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, size);
+			MappedByteBuffer log = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + size, logLength);
+			MappedByteBuffer moves = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + size + logLength,
+					4L * moveCount);
+			header.rewind();
+			if (checksum(header, cells, log, moves) != expected)
+			{
+				throw new IOException("Checksum mismatch in saved game: " + path);
+			}
+
+			byte[] packed = new byte[(int) size];
+			cells.get(packed);
+			int[] marks = new int[Mark.values().length];
+			marks[Mark.FLAG.ordinal()] = flagged;
+			marks[Mark.QUESTION_MARK.ordinal()] = questioned;
+			marks[Mark.NONE.ordinal()] = (int) size - flagged - questioned;
+			Grid grid = new Grid(rows, cols, packed, hiddenSafe, marks);
+
+			byte[] encoded = new byte[logLength];
+			log.get(encoded);
+			int[] starts = new int[moveCount];
+			moves.asIntBuffer().get(starts);
+			for (int i = 0; i < moveCount; i++)
+			{
+				if (starts[i] < (i == 0 ? 0 : starts[i - 1]) || starts[i] > historySize)
+				{
+					throw new IOException("Corrupt saved game: " + path);
+				}
+			}
+			MoveLog history;
+			try
+			{
+				history = new MoveLog(grid, encoded, historySize, starts);
+			}
+			catch (IllegalArgumentException e)
+			{
+				throw new IOException("Corrupt saved game: " + path, e);
+			}
+			return new Minesweeper(grid, mines, clicks, (flags & OVER_FLAG) != 0, history);
+		}
+	}
+
+	/**
+	 * Returns the CRC-32 of the header, up to the checksum itself, followed by
+	 * the cells, the history and the move starts. The positions of the buffers
+	 * are left unchanged.
+	 *
+	 * @param header
+	 *            header, with at least <code>CHECKSUM_OFFSET</code> bytes from
+	 *            position 0
+	 * @param cells
+	 *            packed cells
+	 * @param log
+	 *            encoded history
+	 * @param moves
+	 *            first entry of each move
+	 * @return checksum
+	 */
+	private static int checksum(ByteBuffer header, ByteBuffer cells, ByteBuffer log, ByteBuffer moves)
+	{
+		CRC32 crc = new CRC32();
+		ByteBuffer h = header.duplicate();
+		h.position(0);
+		h.limit(CHECKSUM_OFFSET);
+		crc.update(h);
+		crc.update(cells.duplicate());
+		crc.update(log.duplicate());
+		crc.update(moves.duplicate());
+		return (int) crc.getValue();
+	}
+}
@@ -0,0 +1,804 @@
+package hw2;
+
+import java.util.BitSet;
+import java.util.HashMap;
+
+import api.Cell;
+import api.CellObserver;
+import api.CellRegion;
+import api.Mark;
+import api.RegionObserver;
+import api.Status;
+
+/**
+ * Packed storage for the cells of a minesweeper game. Every cell is kept in a
+ * single byte of one array, indexed by <code>row * columns + col</code>,
+ * instead of being a separate <code>Cell</code> object. The low four bits of a
+ * cell hold its count (with 15 standing for -1), then one bit for whether it is
+ * a mine, two bits for its mark and one bit that is set whenever its status is
+ * not HIDDEN.
+ * <p>
+ * The intermediate statuses used to animate a flood fill (SEEN and the four
+ * EXPLORE values) only ever apply to the few cells a fill is currently working
+ * on, so they are kept in a small side table rather than in the array itself.
+ * <p>
+ * Callers that need a <code>Cell</code> can get one from <code>getCell</code>,
+ * which returns a lightweight view that reads and writes through to this grid.
+ * <p>
+ * The grid also keeps a running count of the non-mine cells that are still
+ * hidden, updated on every change to a cell's status or mine value, so callers
+ * can tell whether the game has been won without scanning the cells. In the
+ * same way it counts the cells marked with each mark value.
+ * <p>
+ * A <code>CellObserver</code> is told about every status change, including
+ * each step of a flood fill, which is only worth the cost when animating. A
+ * <code>RegionObserver</code> is instead told once, when
+ * <code>fireChanges</code> is called, about every cell changed since the last
+ * call; until then the grid only sets a bit per changed cell and widens a
+ * bounding rectangle.
+ * <p>
+ * None of the above is thread-safe. For games played by several threads at
+ * once, the package can instead change single cells through methods that
+ * leave the running counts and the observers to the caller, which must hold
+ * a lock covering the cell.
+ */
+public class Grid
+{
+	/**
+	 * Bits of a cell holding its count.
+	 */
+	private static final int COUNT_MASK = 0x0F;
+	/**
+	 * Bit of a cell that is set if the cell is a mine.
+	 */
+	private static final int MINE_BIT = 0x10;
+	/**
+	 * Position of the two bits of a cell holding its mark.
+	 */
+	private static final int MARK_SHIFT = 5;
+	/**
+	 * Bits of a cell holding its mark.
+	 */
+	private static final int MARK_MASK = 0x3 << MARK_SHIFT;
+	/**
+	 * Bit of a cell that is set if its status is anything other than HIDDEN.
+	 */
+	private static final int OPEN_BIT = 0x80;
+	/**
+	 * Mark values, indexed by ordinal.
+	 */
+	private static final Mark[] MARKS = Mark.values();
+
+	/**
+	 * Number of rows in the grid
+	 */
+	private final int rows;
+	/**
+	 * Number of columns in the grid
+	 */
+	private final int cols;
+	/**
+	 * Row reported by cell views for row 0 of this grid
+	 */
+	private final int rowOrigin;
+	/**
+	 * Column reported by cell views for column 0 of this grid
+	 */
+	private final int colOrigin;
+	/**
+	 * One byte per cell, laid out as described above
+	 */
+	private final byte[] cells;
+	/**
+	 * Status of the cells that are part way through a flood fill
+	 */
+	private final HashMap<Integer, Status> exploring;
+	/**
+	 * Number of non-mine cells with status HIDDEN
+	 */
+	private int hiddenSafe;
+	/**
+	 * Number of cells with each mark value, indexed by ordinal
+	 */
+	private final int[] markCounts;
+	/**
+	 * Observer to be notified when the status of any cell changes
+	 */
+	private CellObserver observer;
+	/**
+	 * Observer to be notified of the cells changed by each operation
+	 */
+	private RegionObserver regionObserver;
+	/**
+	 * Bit set for each cell changed since <code>fireChanges</code> was last
+	 * called, or null if there is no region observer
+	 */
+	private BitSet changed;
+	/**
+	 * First row holding a changed cell, or <code>Integer.MAX_VALUE</code> if
+	 * there is none
+	 */
+	private int changedTop;
+	/**
+	 * First column holding a changed cell, or <code>Integer.MAX_VALUE</code>
+	 * if there is none
+	 */
+	private int changedLeft;
+	/**
+	 * Last row holding a changed cell, or -1 if there is none
+	 */
+	private int changedBottom;
+	/**
+	 * Last column holding a changed cell, or -1 if there is none
+	 */
+	private int changedRight;
+
+	/**
+	 * Constructs a grid of the given size. Initially all cells are non-mines
+	 * with status HIDDEN, count 0, and mark value NONE.
+	 *
+	 * @param rows
+	 *            number of rows in the grid
+	 * @param columns
+	 *            number of columns in the grid
+	 */
+	public Grid(int rows, int columns)
+	{
+		this(rows, columns, 0, 0);
+	}
+
+	/**
+	 * Constructs a grid of the given size that is part of a larger board, so
+	 * the cells returned by <code>getCell</code> and passed to the observer
+	 * report their position on that board. Indices and the row and column
+	 * arguments of all other methods are still relative to this grid.
+	 *
+	 * @param rows
+	 *            number of rows in the grid
+	 * @param columns
+	 *            number of columns in the grid
+	 * @param rowOrigin
+	 *            row on the board of the first row of this grid
+	 * @param colOrigin
+	 *            column on the board of the first column of this grid
+	 */
+	Grid(int rows, int columns, int rowOrigin, int colOrigin)
+	{
+		if (rows <= 0 || columns <= 0 || (long) rows * columns > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException("Invalid grid size " + rows + "x" + columns);
+		}
+		this.rows = rows;
+		this.cols = columns;
+		this.rowOrigin = rowOrigin;
+		this.colOrigin = colOrigin;
+		cells = new byte[rows * columns];
+		exploring = new HashMap<Integer, Status>();
+		hiddenSafe = cells.length;
+		markCounts = new int[MARKS.length];
+		markCounts[Mark.NONE.ordinal()] = cells.length;
+		clearChanges();
+	}
+
+	/**
+	 * Constructs a grid from cells already packed in the format described
+	 * above, such as those saved by <code>GameFile</code>, taking ownership of
+	 * the array. The running counts are given rather than recomputed, so this
+	 * takes constant time. No cell may be in the middle of a flood fill.
+	 *
+	 * @param rows
+	 *            number of rows in the grid
+	 * @param columns
+	 *            number of columns in the grid
+	 * @param packed
+	 *            one byte per cell
+	 * @param hiddenSafeCount
+	 *            number of non-mine cells with status HIDDEN
+	 * @param givenMarkCounts
+	 *            number of cells with each mark value, indexed by ordinal
+	 */
+	Grid(int rows, int columns, byte[] packed, int hiddenSafeCount, int[] givenMarkCounts)
+	{
+		if (rows <= 0 || columns <= 0 || (long) rows * columns != packed.length
+				|| givenMarkCounts.length != MARKS.length)
+		{
+			throw new IllegalArgumentException("Invalid grid size " + rows + "x" + columns);
+		}
+		this.rows = rows;
+		this.cols = columns;
+		rowOrigin = 0;
+		colOrigin = 0;
+		cells = packed;
+		exploring = new HashMap<Integer, Status>();
+		hiddenSafe = hiddenSafeCount;
+		markCounts = givenMarkCounts.clone();
+		clearChanges();
+	}
+
+	/**
+	 * Returns a hidden, unmarked cell in the format described above, for
+	 * other classes of the package that build packed cells directly.
+	 *
+	 * @param isMine
+	 *            true if the cell is a mine
+	 * @param count
+	 *            count for the cell, between -1 and 8
+	 * @return packed cell
+	 */
+	static byte pack(boolean isMine, int count)
+	{
+		return (byte) ((count & COUNT_MASK) | (isMine ? MINE_BIT : 0));
+	}
+
+	/**
+	 * Returns the array holding the cells, in the format described above. This
+	 * is for other classes of the package that save or copy whole grids; the
+	 * array must not be changed.
+	 *
+	 * @return one byte per cell
+	 */
+	byte[] getPacked()
+	{
+		return cells;
+	}
+
+	/**
+	 * Returns the number of rows in the grid.
+	 *
+	 * @return number of rows
+	 */
+	public int getRows()
+	{
+		return rows;
+	}
+
+	/**
+	 * Returns the number of columns in the grid.
+	 *
+	 * @return number of columns
+	 */
+	public int getColumns()
+	{
+		return cols;
+	}
+
+	/**
+	 * Returns the total number of cells in the grid.
+	 *
+	 * @return number of cells
+	 */
+	public int size()
+	{
+		return cells.length;
+	}
+
+	/**
+	 * Returns the index of the cell at the given position.
+	 *
+	 * @param row
+	 *            given position row
+	 * @param col
+	 *            given position column
+	 * @return index of the cell
+	 */
+	public int index(int row, int col)
+	{
+		return row * cols + col;
+	}
+
+	/**
+	 * Returns the row of the cell with the given index.
+	 *
+	 * @param index
+	 *            index of a cell
+	 * @return row of the cell
+	 */
+	public int getRow(int index)
+	{
+		return index / cols;
+	}
+
+	/**
+	 * Returns the column of the cell with the given index.
+	 *
+	 * @param index
+	 *            index of a cell
+	 * @return column of the cell
+	 */
+	public int getCol(int index)
+	{
+		return index % cols;
+	}
+
+	/**
+	 * Returns whether the cell with the given index is a mine.
+	 *
+	 * @param index
+	 *            index of a cell
+	 * @return true if the cell is a mine, false otherwise
+	 */
+	public boolean isMine(int index)
+	{
+		return (cells[index] & MINE_BIT) != 0;
+	}
+
+	/**
+	 * Sets whether or not the cell with the given index is a mine.
+	 *
+	 * @param index
+	 *            index of a cell
+	 * @param isMine
+	 *            true if the cell is a mine, false otherwise
+	 */
+	public void setMine(int index, boolean isMine)
+	{
+		if (isMine != isMine(index) && isHidden(index))
+		{
+			hiddenSafe += isMine ? -1 : 1;
+		}
+		if (isMine)
+		{
+			cells[index] |= MINE_BIT;
+		}
+		else
+		{
+			cells[index] &= ~MINE_BIT;
+		}
+		if (changed != null)
+		{
+			noteChanged(index);
+		}
+	}
+
+	/**
+	 * Returns the count for the cell with the given index.
+	 *
+	 * @param index
+	 *            index of a cell
+	 * @return count for the cell, between -1 and 8
+	 */
+	public int getCount(int index)
+	{
+		int count = cells[index] & COUNT_MASK;
+		return count == COUNT_MASK ? -1 : count;
+	}
+
+	/**
+	 * Sets the count for the cell with the given index.
+	 *
+	 * @param index
+	 *            index of a cell
+	 * @param count
+	 *            count for the cell, between -1 and 8
+	 */
+	public void setCount(int index, int count)
+	{
+		cells[index] = (byte) ((cells[index] & ~COUNT_MASK) | (count & COUNT_MASK));
+		if (changed != null)
+		{
+			noteChanged(index);
+		}
+	}
+
+	/**
+	 * Returns the mark value for the cell with the given index.
+	 *
+	 * @param index
+	 *            index of a cell
+	 * @return mark value for the cell
+	 */
+	public Mark getMark(int index)
+	{
+		return MARKS[(cells[index] & MARK_MASK) >> MARK_SHIFT];
+	}
+
+	/**
+	 * Sets the mark value for the cell with the given index.
+	 *
+	 * @param index
+	 *            index of a cell
+	 * @param mark
+	 *            mark value for the cell
+	 */
+	public void setMark(int index, Mark mark)
+	{
+		markCounts[(cells[index] & MARK_MASK) >> MARK_SHIFT]--;
+		markCounts[mark.ordinal()]++;
+		cells[index] = (byte) ((cells[index] & ~MARK_MASK) | (mark.ordinal() << MARK_SHIFT));
+		if (changed != null)
+		{
+			noteChanged(index);
+		}
+	}
+
+	/**
+	 * Returns whether the cell with the given index has status HIDDEN.
+	 *
+	 * @param index
+	 *            index of a cell
+	 * @return true if the cell is hidden, false otherwise
+	 */
+	public boolean isHidden(int index)
+	{
+		return (cells[index] & OPEN_BIT) == 0;
+	}
+
+	/**
+	 * Returns the status for the cell with the given index.
+	 *
+	 * @param index
+	 *            index of a cell
+	 * @return status for the cell
+	 */
+	public Status getStatus(int index)
+	{
+		if ((cells[index] & OPEN_BIT) == 0)
+		{
+			return Status.HIDDEN;
+		}
+		if (exploring.isEmpty())
+		{
+			return Status.REVEALED;
+		}
+		Status s = exploring.get(index);
+		return s == null ? Status.REVEALED : s;
+	}
+
+	/**
+	 * Sets the status for the cell with the given index. This method also
+	 * notifies the cell observer if there is one, and records the change for
+	 * the region observer if there is one.
+	 *
+	 * @param index
+	 *            index of a cell
+	 * @param status
+	 *            status for the cell
+	 */
+	public void setStatus(int index, Status status)
+	{
+		if ((status == Status.HIDDEN) != isHidden(index) && !isMine(index))
+		{
+			hiddenSafe += status == Status.HIDDEN ? 1 : -1;
+		}
+		if (status == Status.HIDDEN)
+		{
+			cells[index] &= ~OPEN_BIT;
+		}
+		else
+		{
+			cells[index] |= OPEN_BIT;
+		}
+
+		if (status == Status.HIDDEN || status == Status.REVEALED)
+		{
+			if (!exploring.isEmpty())
+			{
+				exploring.remove(index);
+			}
+		}
+		else
+		{
+			exploring.put(index, status);
+		}
+
+		if (changed != null)
+		{
+			noteChanged(index);
+		}
+		if (observer != null)
+		{
+			observer.update(new CellView(index));
+		}
+	}
+
+	/**
+	 * Returns the number of non-mine cells whose status is HIDDEN. This is kept
+	 * up to date as cells change, so it takes constant time.
+	 *
+	 * @return number of hidden non-mine cells
+	 */
+	public int getHiddenSafeCount()
+	{
+		return hiddenSafe;
+	}
+
+	/**
+	 * Returns the number of cells with the given mark value. This is kept up to
+	 * date as marks change, so it takes constant time.
+	 *
+	 * @param mark
+	 *            mark value to count
+	 * @return number of cells with the mark
+	 */
+	public int getMarkCount(Mark mark)
+	{
+		return markCounts[mark.ordinal()];
+	}
+
+	/**
+	 * Sets an observer to be notified if the status of any cell changes.
+	 *
+	 * @param givenObserver
+	 *            observer to be notified, or null for none
+	 */
+	public void setObserver(CellObserver givenObserver)
+	{
+		observer = givenObserver;
+	}
+
+	/**
+	 * Returns whether an observer is set to be notified of every status
+	 * change. Without one, callers may skip statuses that only matter for
+	 * animation.
+	 *
+	 * @return true if there is a cell observer, false otherwise
+	 */
+	boolean hasObserver()
+	{
+		return observer != null;
+	}
+
+	/**
+	 * Sets an observer to be notified, each time <code>fireChanges</code> is
+	 * called, of the cells changed since the last call. Changes made before
+	 * the observer is set are not reported.
+	 *
+	 * @param givenObserver
+	 *            observer to be notified, or null for none
+	 */
+	public void setRegionObserver(RegionObserver givenObserver)
+	{
+		regionObserver = givenObserver;
+		changed = givenObserver != null ? new BitSet() : null;
+		clearChanges();
+	}
+
+	/**
+	 * Notifies the region observer, if there is one, of the cells changed
+	 * since the last call, in a single event, and starts recording afresh.
+	 * This does nothing if no cell has changed. The event uses the positions
+	 * cell views report.
+	 */
+	public void fireChanges()
+	{
+		if (changed == null || changedTop > changedBottom)
+		{
+			return;
+		}
+		int width = changedRight - changedLeft + 1;
+		BitSet region = new BitSet(width * (changedBottom - changedTop + 1));
+		int end = index(changedBottom, changedRight);
+		for (int i = changed.nextSetBit(index(changedTop, changedLeft)); i >= 0 && i <= end; i = changed
+				.nextSetBit(i + 1))
+		{
+			region.set((getRow(i) - changedTop) * width + getCol(i) - changedLeft);
+		}
+		CellRegion event = new CellRegion(changedTop + rowOrigin, changedLeft + colOrigin,
+				changedBottom + rowOrigin, changedRight + colOrigin, region);
+		changed.clear(index(changedTop, changedLeft), end + 1);
+		clearChanges();
+		regionObserver.cellsChanged(event);
+	}
+
+	/**
+	 * Records that the cell with the given index has changed.
+	 *
+	 * @param index
+	 *            index of a cell
+	 */
+	private void noteChanged(int index)
+	{
+		changed.set(index);
+		int row = index / cols;
+		int col = index - row * cols;
+		changedTop = Math.min(changedTop, row);
+		changedBottom = Math.max(changedBottom, row);
+		changedLeft = Math.min(changedLeft, col);
+		changedRight = Math.max(changedRight, col);
+	}
+
+	/**
+	 * Empties the bounding rectangle of the changed cells.
+	 */
+	private void clearChanges()
+	{
+		changedTop = Integer.MAX_VALUE;
+		changedLeft = Integer.MAX_VALUE;
+		changedBottom = -1;
+		changedRight = -1;
+	}
+
+	/**
+	 * Sets the status of the cell with the given index to REVEALED, unless it
+	 * is already revealed. Only the cell changes: the hidden count is not
+	 * updated and no observer is notified. The caller must hold a lock
+	 * covering the cell if other threads may change it.
+	 *
+	 * @param index
+	 *            index of a cell
+	 * @return true if this call revealed the cell, false if it was not hidden
+	 */
+	boolean revealCell(int index)
+	{
+		return (replaceBits(index, OPEN_BIT, OPEN_BIT) & OPEN_BIT) == 0;
+	}
+
+	/**
+	 * Sets the mark value of the cell with the given index. Only the cell
+	 * changes, as for <code>revealCell</code>.
+	 *
+	 * @param index
+	 *            index of a cell
+	 * @param mark
+	 *            mark value for the cell
+	 * @return previous mark value of the cell
+	 */
+	Mark replaceMark(int index, Mark mark)
+	{
+		int old = replaceBits(index, MARK_MASK, mark.ordinal() << MARK_SHIFT);
+		return MARKS[(old & MARK_MASK) >> MARK_SHIFT];
+	}
+
+	/**
+	 * Moves the mark value of the cell with the given index to the next one
+	 * in the order NONE, FLAG, QUESTION_MARK. Only the cell changes, as for
+	 * <code>revealCell</code>.
+	 *
+	 * @param index
+	 *            index of a cell
+	 * @return previous mark value of the cell
+	 */
+	Mark cycleMark(int index)
+	{
+		Mark old = MARKS[(cells[index] & MARK_MASK) >> MARK_SHIFT];
+		replaceMark(index, MARKS[(old.ordinal() + 1) % MARKS.length]);
+		return old;
+	}
+
+	/**
+	 * Sets whether the cell with the given index is a mine, and its count,
+	 * leaving its mark and status alone. Only the cell changes, as for
+	 * <code>revealCell</code>.
+	 *
+	 * @param index
+	 *            index of a cell
+	 * @param isMine
+	 *            true if the cell is a mine, false otherwise
+	 * @param count
+	 *            count for the cell, between -1 and 8
+	 */
+	void setMineAndCount(int index, boolean isMine, int count)
+	{
+		replaceBits(index, MINE_BIT | COUNT_MASK, pack(isMine, count));
+	}
+
+	/**
+	 * Replaces the given bits of the cell with the given index.
+	 *
+	 * @param index
+	 *            index of a cell
+	 * @param mask
+	 *            bits to replace
+	 * @param bits
+	 *            new values of the bits, none of them outside the mask
+	 * @return previous packed cell
+	 */
+	private int replaceBits(int index, int mask, int bits)
+	{
+		byte old = cells[index];
+		cells[index] = (byte) ((old & ~mask) | bits);
+		return old;
+	}
+
+	/**
+	 * Returns a <code>Cell</code> for the given index. The returned cell holds
+	 * no state of its own; it reads and writes through to this grid, so it
+	 * always reflects the current state of the cell.
+	 *
+	 * @param index
+	 *            index of a cell
+	 * @return view of the cell
+	 */
+	public Cell getCell(int index)
+	{
+		return new CellView(index);
+	}
+
+	/**
+	 * A <code>Cell</code> whose state lives in the enclosing grid. Setting an
+	 * observer on a view sets it for the whole grid.
+	 */
+	private class CellView extends Cell
+	{
+		/**
+		 * Index of the cell in the grid
+		 */
+		private final int index;
+
+		private CellView(int index)
+		{
+			super(index / cols + rowOrigin, index % cols + colOrigin);
+			this.index = index;
+		}
+
+		@Override
+		public void setObserver(CellObserver givenObserver)
+		{
+			Grid.this.setObserver(givenObserver);
+		}
+
+		@Override
+		public void setIsMine(boolean isMine)
+		{
+			setMine(index, isMine);
+		}
+
+		@Override
+		public boolean isMine()
+		{
+			return Grid.this.isMine(index);
+		}
+
+		@Override
+		public void setCount(int givenCount)
+		{
+			Grid.this.setCount(index, givenCount);
+		}
+
+		@Override
+		public int getCount()
+		{
+			return Grid.this.getCount(index);
+		}
+
+		@Override
+		public Mark getMark()
+		{
+			return Grid.this.getMark(index);
+		}
+
+		@Override
+		public void setMark(Mark givenMark)
+		{
+			Grid.this.setMark(index, givenMark);
+		}
+
+		@Override
+		public Status getStatus()
+		{
+			return Grid.this.getStatus(index);
+		}
+
+		@Override
+		public void setStatus(Status givenStatus)
+		{
+			Grid.this.setStatus(index, givenStatus);
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			// like Cell.equals, only objects of the same class are equal,
+			// which keeps the relation symmetric
+			if (obj != null && obj.getClass() == getClass())
+			{
+				Cell other = (Cell) obj;
+				return getRow() == other.getRow() &&
+						getCol() == other.getCol() &&
+						isMine() == other.isMine() &&
+						getCount() == other.getCount() &&
+						getStatus() == other.getStatus() &&
+						getMark() == other.getMark();
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			// the position reported, not the index in this grid, since
+			// equal views of offset grids may have different indices
+			return 31 * getRow() + getCol();
+		}
+	}
+}
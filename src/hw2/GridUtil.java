@@ -1,6 +1,13 @@
 package hw2;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import api.Cell;
 import api.Mark;
@@ -11,7 +18,7 @@ import api.Status;
  * 
  * @date 3/30/2016 Bowling game with a number of frames specified by the user.
  *       Utility class for an implementation of Minesweeper. This class contains
- *       methods for examining and updating a 2D array of Cell objects.
+ *       methods for examining and updating a <code>Grid</code> of cells.
  */
 public class GridUtil 
 {
@@ -22,31 +29,46 @@ public class GridUtil
 	public static final char MINE_CHAR = 'x';
 
 	/**
-	 * Creates a 2D array of Cells from an array of strings, where each string
-	 * corresponds to one row of the returned array. The jth character of the
-	 * ith string corresponds to row i, column j of the Cell array. A MINE_CHAR
+	 * Number of cells below which <code>initCounts</code> runs entirely on the
+	 * calling thread.
+	 */
+	private static final int PARALLEL_THRESHOLD = 1 << 18;
+
+	/**
+	 * Largest number of cells in one band of rows counted by a single task.
+	 */
+	private static final int BAND_SIZE = 1 << 16;
+
+	/**
+	 * Largest number of characters written at once by <code>writeTo</code>.
+	 */
+	private static final int WRITE_CHUNK = 1 << 16;
+
+	/**
+	 * Creates a grid from an array of strings, where each string corresponds to
+	 * one row of the returned grid. The jth character of the ith string
+	 * corresponds to row i, column j of the grid. A MINE_CHAR
 	 * character means the corresponding cell will be set as a mine. All strings
 	 * in the given array must have the same length. This method does not
 	 * calculate the counts for the cells. Initially all cells have status
 	 * HIDDEN, count 0, and mark value NONE.
 	 * 
 	 * @param descriptor
-	 *            array of strings from which to construct the Cell array
-	 * @return 2D array of Cells
+	 *            array of strings from which to construct the grid
+	 * @return grid of cells
 	 */
-	public static Cell[][] createFromStringArray(String[] descriptor) 
+	public static Grid createFromStringArray(String[] descriptor) 
 	{
 		int width = descriptor[0].length();
 		int height = descriptor.length;
-		Cell[][] grid = new Cell[height][width];
+		Grid grid = new Grid(height, width);
 		for (int row = 0; row < height; row += 1) 
 		{
 			for (int col = 0; col < width; col += 1) 
 			{
-				grid[row][col] = new Cell(row, col);
 				if (descriptor[row].charAt(col) == MINE_CHAR) 
 				{
-					grid[row][col].setIsMine(true);
+					grid.setMine(grid.index(row, col), true);
 				}
 			}
 		}
@@ -65,81 +87,359 @@ public class GridUtil
 	 * MINE_CHAR and all other non-mines are displayed as the count.
 	 *
 	 * @param grid
-	 *            2D array of Cells
+	 *            grid of cells
 	 * @param revealAll
 	 *            true if hidden values should be shown, false otherwise
 	 * @return array of strings representing the grid
 	 */
-	public static String[] convertToStringArray(Cell[][] grid, boolean revealAll) 
+	public static String[] convertToStringArray(Grid grid, boolean revealAll) 
 	{
-		String[] ret = new String[grid.length];
-		for (int row = 0; row < grid.length; row += 1) 
+		String[] ret = new String[grid.getRows()];
+		char[] current = new char[grid.getColumns()];		//Reused for every row
+		for (int row = 0; row < grid.getRows(); row += 1) 
 		{
-			String current = "";
-			for (int col = 0; col < grid[0].length; col += 1) 
+			int c = grid.index(row, 0);
+			for (int col = 0; col < current.length; col += 1, c += 1) 
 			{
-				Cell c = grid[row][col];
-				if (c.getStatus() == Status.HIDDEN && !revealAll) 
+				current[col] = toChar(grid, c, revealAll);
+			}
+			ret[row] = new String(current);
+		}
+		return ret;
+	}
+
+	/**
+	 * Writes a grid to the given <code>Appendable</code>, one line per row,
+	 * using the same characters as <code>convertToStringArray</code>. Each row
+	 * ends with a newline. The characters go through one buffer, of at most
+	 * <code>WRITE_CHUNK</code> characters, that is reused for every row, so
+	 * the memory used does not depend on the size of the grid. A
+	 * <code>Writer</code> is given the buffer itself; any other
+	 * <code>Appendable</code> gets a <code>CharBuffer</code> view of it.
+	 * 
+	 * @param grid
+	 *            grid of cells
+	 * @param revealAll
+	 *            true if hidden values should be shown, false otherwise
+	 * @param out
+	 *            destination of the characters
+	 * @throws IOException
+	 *             if the destination cannot be written
+	 */
+	public static void writeTo(Grid grid, boolean revealAll, Appendable out) throws IOException 
+	{
+		int cols = grid.getColumns();
+		char[] buffer = new char[Math.min(cols + 1, WRITE_CHUNK)];
+		CharBuffer view = CharBuffer.wrap(buffer);
+		Writer writer = out instanceof Writer ? (Writer) out : null;
+
+		int n = 0;
+		for (int row = 0; row < grid.getRows(); row += 1) 
+		{
+			int c = grid.index(row, 0);
+			for (int col = 0; col <= cols; col += 1, c += 1) 
+			{
+				if (n == buffer.length) 
 				{
-					if (c.getMark() == Mark.FLAG) 
-					{
-						current += "f";
-					} 
-					else if (c.getMark() == Mark.QUESTION_MARK) 
-					{
-						current += "?";
-					}
-					else 
-					{
-						current += "-";
-					}
-				} 
-				else 
+					write(buffer, n, view, writer, out);
+					n = 0;
+				}
+				buffer[n++] = col < cols ? toChar(grid, c, revealAll) : '\n';
+			}
+		}
+		write(buffer, n, view, writer, out);
+	}
+
+	/**
+	 * Writes a grid to the given channel, in the same format as
+	 * <code>writeTo(Grid, boolean, Appendable)</code>, with one byte per
+	 * character. The bytes go through one buffer, of at most
+	 * <code>WRITE_CHUNK</code> bytes, that is reused for every row.
+	 * 
+	 * @param grid
+	 *            grid of cells
+	 * @param revealAll
+	 *            true if hidden values should be shown, false otherwise
+	 * @param channel
+	 *            destination of the bytes
+	 * @throws IOException
+	 *             if the channel cannot be written
+	 */
+	public static void writeTo(Grid grid, boolean revealAll, WritableByteChannel channel) throws IOException 
+	{
+		int cols = grid.getColumns();
+		ByteBuffer buffer = ByteBuffer.allocate(Math.min(cols + 1, WRITE_CHUNK));
+
+		for (int row = 0; row < grid.getRows(); row += 1) 
+		{
+			int c = grid.index(row, 0);
+			for (int col = 0; col <= cols; col += 1, c += 1) 
+			{
+				if (!buffer.hasRemaining()) 
 				{
-					if (c.isMine()) 
-					{
-						current += MINE_CHAR;
-					} else 
-					{
-						current += "" + c.getCount();
-					}
+					drain(buffer, channel);
 				}
+				buffer.put((byte) (col < cols ? toChar(grid, c, revealAll) : '\n'));
 			}
-			ret[row] = current;
 		}
-		return ret;
+		drain(buffer, channel);
+	}
+
+	/**
+	 * Writes the first n characters of the given buffer to a destination.
+	 * 
+	 * @param buffer
+	 *            characters to write
+	 * @param n
+	 *            number of characters to write
+	 * @param view
+	 *            <code>CharBuffer</code> wrapping the buffer
+	 * @param writer
+	 *            destination, if it is a <code>Writer</code>, or null
+	 * @param out
+	 *            destination
+	 * @throws IOException
+	 *             if the destination cannot be written
+	 */
+	private static void write(char[] buffer, int n, CharBuffer view, Writer writer, Appendable out)
+			throws IOException 
+	{
+		if (writer != null) 
+		{
+			writer.write(buffer, 0, n);
+		} 
+		else 
+		{
+			out.append(view, 0, n);
+		}
+	}
+
+	/**
+	 * Writes all the bytes of the given buffer, up to its position, to a
+	 * channel, and clears the buffer.
+	 * 
+	 * @param buffer
+	 *            bytes to write
+	 * @param channel
+	 *            destination
+	 * @throws IOException
+	 *             if the channel cannot be written
+	 */
+	private static void drain(ByteBuffer buffer, WritableByteChannel channel) throws IOException 
+	{
+		buffer.flip();
+		while (buffer.hasRemaining()) 
+		{
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Returns the character for the cell with the given index, according to
+	 * the conventions described in <code>convertToStringArray</code>.
+	 * 
+	 * @param grid
+	 *            grid of cells
+	 * @param c
+	 *            index of a cell
+	 * @param revealAll
+	 *            true if hidden values should be shown, false otherwise
+	 * @return character representing the cell
+	 */
+	static char toChar(Grid grid, int c, boolean revealAll) 
+	{
+		if (grid.isHidden(c) && !revealAll) 
+		{
+			Mark mark = grid.getMark(c);
+			if (mark == Mark.FLAG) 
+			{
+				return 'f';
+			} 
+			else if (mark == Mark.QUESTION_MARK) 
+			{
+				return '?';
+			}
+			return '-';
+		} 
+		if (grid.isMine(c)) 
+		{
+			return MINE_CHAR;
+		}
+		return (char) ('0' + grid.getCount(c));
 	}
 
 	/**
-	 * Initialize the count value for each cell in the given 2D array. The count
+	 * Initialize the count value for each cell in the given grid. The count
 	 * for a non-mine is the number of neighboring cells (left, right, top,
 	 * bottom, and diagonal) that are mines. The count for a mine is -1.
+	 * <p>
+	 * Counts are computed with a sliding 3x3 window rather than by examining
+	 * every neighborhood separately. Grids with at least
+	 * <code>PARALLEL_THRESHOLD</code> cells are split into bands of rows that
+	 * are counted in parallel on the common <code>ForkJoinPool</code>.
 	 * 
 	 * @param grid
-	 *            2D array of Cells
+	 *            grid of cells
 	 */
-	public static void initCounts(Cell[][] grid) 
+	public static void initCounts(Grid grid) 
 	{
-		int val = 0;
+		if (grid.size() < PARALLEL_THRESHOLD) 
+		{
+			initCounts(grid, 0, grid.getRows());
+		} 
+		else 
+		{
+			ForkJoinPool.commonPool().invoke(new CountTask(grid, 0, grid.getRows()));
+		}
+	}
 
-		for (int i = 0; i < grid.length; i++) 		//Loops through grid 
+	/**
+	 * Initializes the count value for each cell in rows <code>from</code> up to
+	 * but not including <code>to</code>. For each row, the number of mines in
+	 * the three rows around it is kept per column, updated from the previous
+	 * row by adding the row below and dropping the row that left the window.
+	 * Each count is then the sum of three neighboring column sums, which is
+	 * also slid along the row one column at a time.
+	 * 
+	 * @param grid
+	 *            grid of cells
+	 * @param from
+	 *            first row to count
+	 * @param to
+	 *            row after the last one to count
+	 */
+	private static void initCounts(Grid grid, int from, int to) 
+	{
+		int rows = grid.getRows();
+		int cols = grid.getColumns();
+		int[] sums = new int[cols];		//Mines in rows r-1 through r+1 of each column
+
+		for (int r = Math.max(0, from - 1); r <= Math.min(rows - 1, from + 1); r++) 
+		{
+			addRow(grid, r, sums, 1);
+		}
+
+		for (int r = from; r < to; r++) 
 		{
-			for (int j = 0; j < grid[0].length; j++) 
+			if (r > from) 
 			{
+				if (r + 1 < rows) 
+				{
+					addRow(grid, r + 1, sums, 1);
+				}
+				if (r - 2 >= 0) 
+				{
+					addRow(grid, r - 2, sums, -1);
+				}
+			}
 
-				if (grid[i][j].isMine() == true) 
+			int window = sums[0] + (cols > 1 ? sums[1] : 0);	//Mines in columns c-1 through c+1
+			for (int c = 0; c < cols; c++) 
+			{
+				int i = grid.index(r, c);
+				grid.setCount(i, grid.isMine(i) ? -1 : window);
+				if (c + 2 < cols) 
 				{
-					val = -1;
-				} 
-				else 
+					window += sums[c + 2];
+				}
+				if (c > 0) 
 				{
-					val = countNeighboringMines(grid, i, j);
+					window -= sums[c - 1];
 				}
+			}
+		}
+	}
 
-				grid[i][j].setCount(val);
+	/**
+	 * Adds the mines in the given row to the column sums, each multiplied by
+	 * the given sign.
+	 * 
+	 * @param grid
+	 *            grid of cells
+	 * @param row
+	 *            row to add
+	 * @param sums
+	 *            mine count for each column
+	 * @param sign
+	 *            1 to add the row, -1 to remove it
+	 */
+	private static void addRow(Grid grid, int row, int[] sums, int sign) 
+	{
+		int i = grid.index(row, 0);
+		for (int c = 0; c < sums.length; c++, i++) 
+		{
+			if (grid.isMine(i)) 
+			{
+				sums[c] += sign;
+			}
+		}
+	}
+
+	/**
+	 * Task that initializes the counts for a band of rows, splitting it in half
+	 * until each piece has at most <code>BAND_SIZE</code> cells. Bands only read
+	 * the mine bits of their neighbors, which never change while counting, and
+	 * only write the counts of their own cells.
+	 */
+	private static class CountTask extends RecursiveAction 
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final Grid grid;
+		private final int from;
+		private final int to;
+
+		CountTask(Grid grid, int from, int to) 
+		{
+			this.grid = grid;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() 
+		{
+			if ((long) (to - from) * grid.getColumns() <= BAND_SIZE || to - from == 1) 
+			{
+				initCounts(grid, from, to);
+			} 
+			else 
+			{
+				int mid = (from + to) >>> 1;
+				invokeAll(new CountTask(grid, from, mid), new CountTask(grid, mid, to));
 			}
 		}
+	}
 
+	/**
+	 * Recomputes the count for the cell at the given position and for each of
+	 * its neighbors. This is all that needs to change after that one cell is
+	 * turned into a mine or a non-mine, so it takes constant time instead of a
+	 * call to <code>initCounts</code>.
+	 * 
+	 * @param grid
+	 *            grid of cells
+	 * @param givenRow
+	 *            given position row
+	 * @param givenCol
+	 *            given position column
+	 */
+	public static void updateCounts(Grid grid, int givenRow, int givenCol) 
+	{
+		int upper = Math.max(0, givenRow - 1);
+		int lower = Math.min(grid.getRows() - 1, givenRow + 1);
+		int left = Math.max(0, givenCol - 1);
+		int right = Math.min(grid.getColumns() - 1, givenCol + 1);
+
+		for (int row = upper; row <= lower; row += 1) 
+		{
+			for (int col = left; col <= right; col += 1) 
+			{
+				int c = grid.index(row, col);
+				grid.setCount(c, grid.isMine(c) ? -1 : countNeighboringMines(grid, row, col));
+			}
+		}
 	}
 
 	/**
@@ -147,19 +447,19 @@ public class GridUtil
 	 * bottom, and diagonal) that are mines.
 	 * 
 	 * @param grid
-	 *            2D array of Cells
+	 *            grid of cells
 	 * @param givenRow
 	 *            given position row
 	 * @param givenCol
 	 *            given position column
 	 * @return number of neighbors that are mines
 	 */
-	public static int countNeighboringMines(Cell[][] grid, int givenRow, int givenCol) {
+	public static int countNeighboringMines(Grid grid, int givenRow, int givenCol) {
 		int num = 0;//Sum of neighboring mines
 		int upper = Math.max(0, givenRow - 1);
-		int lower = Math.min(grid.length - 1, givenRow + 1);		//Accounts for boundary locations on grid
+		int lower = Math.min(grid.getRows() - 1, givenRow + 1);		//Accounts for boundary locations on grid
 		int left = Math.max(0, givenCol - 1);
-		int right = Math.min(grid[0].length - 1, givenCol + 1);
+		int right = Math.min(grid.getColumns() - 1, givenCol + 1);
 
 		//iterates over all cells except for the center one
 		for (int row = upper; row <= lower; row += 1) 
@@ -168,9 +468,7 @@ public class GridUtil
 			{
 				if (!(row == givenRow && col == givenCol)) 
 				{
-					Cell d = grid[row][col];
-
-					if (d.isMine() == true) 
+					if (grid.isMine(grid.index(row, col)) == true) 
 					{
 						num++;
 					}
@@ -184,26 +482,17 @@ public class GridUtil
 	}
 
 	/**
-	 * Determines whether all the non-mine cells have status REVEALED.
+	 * Determines whether all the non-mine cells have status REVEALED. This uses
+	 * the grid's running count of hidden non-mine cells, so it takes constant
+	 * time.
 	 * 
 	 * @param grid
-	 *            2D array of Cells
+	 *            grid of cells
 	 * @return true if all non-mine cells are revealed, false otherwise
 	 */
-	public static boolean areAllCellsRevealed(Cell[][] grid) 
+	public static boolean areAllCellsRevealed(Grid grid) 
 	{
-		boolean result = true;
-		for (int i = 0; i < grid.length; i++) //Loops through grid to find if cells are both revealed and not mines
-		{
-			for (int j = 0; j < grid[0].length; j++) 
-			{
-				if (grid[i][j].getStatus() == Status.HIDDEN && grid[i][j].isMine() == false) 
-				{
-					result = false;
-				}
-			}
-		}
-		return result;
+		return grid.getHiddenSafeCount() == 0;
 	}
 
 	/**
@@ -211,64 +500,48 @@ public class GridUtil
 	 * modified.
 	 * 
 	 * @param grid
-	 *            2D array of Cells
+	 *            grid of cells
 	 */
-	public static void revealAllMines(Cell[][] grid) 
+	public static void revealAllMines(Grid grid) 
 	{
-		for (int row = 0; row < grid.length; row++) //Loops through grid and reveals cells with mines
+		for (int i = 0; i < grid.size(); i++) //Loops through grid and reveals cells with mines
 		{
-			for (int col = 0; col < grid[0].length; col++) 
+			if (grid.isMine(i) == true) 
 			{
-				if (grid[row][col].isMine() == true) 
-				{
-					grid[row][col].setStatus(Status.REVEALED);
-				}
+				grid.setStatus(i, Status.REVEALED);
 			}
 		}
 	}
 
 	/**
-	 * Returns the total number of mines in the given array.
+	 * Returns the total number of mines in the given grid.
 	 * 
 	 * @param grid
-	 *            2D array of Cells
-	 * @return number of mines in the array
+	 *            grid of cells
+	 * @return number of mines in the grid
 	 */
-	public static int countAllMines(Cell[][] grid) {
+	public static int countAllMines(Grid grid) {
 		int count = 0;
-		for (int row = 0; row < grid.length; row++) //Loops through grid to find mines
+		for (int i = 0; i < grid.size(); i++) //Loops through grid to find mines
 		{
-			for (int col = 0; col < grid[0].length; col++) 
+			if (grid.isMine(i) == true) 
 			{
-				if (grid[row][col].isMine() == true) 
-				{
-					count++;
-				}
+				count++;
 			}
 		}
 		return count;
 	}
 
 	/**
-	 * Returns the total number of cells marked as FLAG in the given array.
+	 * Returns the total number of cells marked as FLAG in the given grid. This
+	 * uses the grid's running count of marks, so it takes constant time.
 	 * 
 	 * @param grid
-	 *            2D array of Cells
+	 *            grid of cells
 	 * @return number of flagged cells
 	 */
-	public static int countAllFlags(Cell[][] grid) {
-		int sum = 0;
-		for (int row = 0; row < grid.length; row++) 	//Loops through grid to find cells with flag mark
-		{
-			for (int col = 0; col < grid[0].length; col++) 
-			{
-				if (grid[row][col].getMark() == Mark.FLAG) 
-				{
-					sum++;
-				}
-			}
-		}
-		return sum;
+	public static int countAllFlags(Grid grid) {
+		return grid.getMarkCount(Mark.FLAG);
 	}
 
 	/**
@@ -277,19 +550,19 @@ public class GridUtil
 	 * is no such cell.
 	 * 
 	 * @param grid
-	 *            2D array of Cells
+	 *            grid of cells
 	 * @param givenRow
 	 *            given position row
 	 * @param givenCol
 	 *            given position column
 	 * @return a hidden, non-mine cell that neighbors the given position
 	 */
-	public static Cell findOneHiddenNeighbor(Cell[][] grid, int givenRow, int givenCol) 
+	public static Cell findOneHiddenNeighbor(Grid grid, int givenRow, int givenCol) 
 	{
 		int upper = Math.max(0, givenRow - 1);
-		int lower = Math.min(grid.length - 1, givenRow + 1);
+		int lower = Math.min(grid.getRows() - 1, givenRow + 1);
 		int left = Math.max(0, givenCol - 1);					//Accounts for locations of cells if on the boundary of grid
-		int right = Math.min(grid[0].length - 1, givenCol + 1);
+		int right = Math.min(grid.getColumns() - 1, givenCol + 1);
 		Cell d = null;
 		// now we can iterate over all cells except for the center one
 		for (int row = upper; row <= lower; row += 1) 
@@ -298,8 +571,9 @@ public class GridUtil
 			{
 				if (!(row == givenRow && col == givenCol)) 
 				{
-					d = grid[row][col];
-					if (d.isMine() == false && d.getStatus() == Status.HIDDEN && d.getCount() > 0) 
+					int i = grid.index(row, col);
+					d = grid.getCell(i);
+					if (grid.isMine(i) == false && grid.isHidden(i) && grid.getCount(i) > 0) 
 					{
 						return d;
 					}
@@ -315,18 +589,15 @@ public class GridUtil
 	 * Sets all mine cells to have mark value <code>Mark.FLAG</code>.
 	 * 
 	 * @param grid
-	 *            2D array of Cells
+	 *            grid of cells
 	 */
-	public static void flagAllMines(Cell[][] grid) 
+	public static void flagAllMines(Grid grid) 
 	{
-		for (int row = 0; row < grid.length; row++) 
+		for (int i = 0; i < grid.size(); i++) 
 		{
-			for (int col = 0; col < grid[0].length; col++) 
+			if (grid.isMine(i) == true) 
 			{
-				if (grid[row][col].isMine() == true) 
-				{
-					grid[row][col].setMark(Mark.FLAG);
-				}
+				grid.setMark(i, Mark.FLAG);
 			}
 		}
 
@@ -335,25 +606,25 @@ public class GridUtil
 	/**
 	 * Reveals all neighbors of the Cell at the given position that are not
 	 * mines and have count greater than zero. If the given
-	 * <code>ArrayList</code> is non-null, all revealed cells are added to the
-	 * list, in the order in which they are revealed.
+	 * <code>MoveLog</code> is non-null, all revealed cells are added to the
+	 * log, in the order in which they are revealed.
 	 * 
 	 * @param grid
-	 *            2D array of Cells
+	 *            grid of cells
 	 * @param givenRow
 	 *            given position row
 	 * @param givenCol
 	 *            given position column
 	 * @param history
-	 *            list to which revealed cells are added
+	 *            log to which revealed cells are added
 	 */
-	public static void revealNeighbors(Cell[][] grid, int givenRow, int givenCol, ArrayList<Cell> history) {
+	public static void revealNeighbors(Grid grid, int givenRow, int givenCol, MoveLog history) {
 		// find the boundary around the given cell; this will normally be a 3x3
 		// region, but we may be against one or both of the borders
 		int upper = Math.max(0, givenRow - 1);
-		int lower = Math.min(grid.length - 1, givenRow + 1);		
+		int lower = Math.min(grid.getRows() - 1, givenRow + 1);		
 		int left = Math.max(0, givenCol - 1);
-		int right = Math.min(grid[0].length - 1, givenCol + 1);
+		int right = Math.min(grid.getColumns() - 1, givenCol + 1);
 
 		// now we can iterate over all cells except for the center one
 		for (int row = upper; row <= lower; row += 1) 
@@ -362,10 +633,10 @@ public class GridUtil
 			{
 				if (!(row == givenRow && col == givenCol)) 
 				{
-					Cell d = grid[row][col];
-					if (d.getCount() > 0) 
+					int d = grid.index(row, col);
+					if (grid.getCount(d) > 0) 
 					{
-						d.setStatus(Status.REVEALED);
+						grid.setStatus(d, Status.REVEALED);
 						if (history != null) 
 						{
 							history.add(d);
@@ -381,54 +652,166 @@ public class GridUtil
 	 * cells with count zero, plus the cells at the boundary of the region,
 	 * starting at the given position. If the cell at the given position does
 	 * not have count 0, this method does nothing. If the given
-	 * <code>ArrayList</code> is non-null, all revealed cells are added to the
-	 * list, in the order in which they are revealed.
+	 * <code>MoveLog</code> is non-null, all revealed cells are added to the
+	 * log, in the order in which they are revealed.
+	 * <p>
+	 * The fill is depth first, exploring up, left, down and right from each
+	 * cell, but it keeps its own stack of cells instead of recursing, so it
+	 * takes time and extra memory linear in the size of the region however
+	 * large that is.
+	 * <p>
+	 * Each cell passes through the statuses SEEN, EXPLORE_UP, EXPLORE_LEFT,
+	 * EXPLORE_DOWN, EXPLORE_RIGHT and REVEALED, so that an observer can
+	 * animate the fill. If the grid has no cell observer, nobody can see those
+	 * steps, and cells are set to REVEALED as soon as they are reached instead;
+	 * the cells are visited, and added to the log, in the same order.
 	 * 
 	 * @param grid
-	 *            2D
+	 *            grid of cells
 	 * @param row
 	 *            initial cell row
 	 * @param col
 	 *            initial cell column
 	 * @param history
-	 *            list to which revealed cells are added
+	 *            log to which revealed cells are added
 	 * 
 	 */
-	public static void clearRegion(Cell[][] grid, int row, int col, ArrayList<Cell> history) {
-		int upper = Math.max(0, row - 1);
-		int lower = Math.min(grid.length - 1, row + 1);
-		int left = Math.max(0, col - 1);						//Accounts for corner cells
-		int right = Math.min(grid[0].length - 1, col + 1);
-
-		Cell c = grid[row][col];
-		c.setStatus(Status.SEEN);
-		c.setStatus(Status.EXPLORE_UP);
-
-		if (grid[upper][col].getStatus() == Status.HIDDEN && grid[upper][col].getCount() == 0) //Searches through nearby 0s with recursion
+	public static void clearRegion(Grid grid, int row, int col, MoveLog history) {
+		if (!grid.hasObserver()) 
 		{
-			clearRegion(grid, upper, col, history);
+			fillRegion(grid, grid.index(row, col), history);
+			return;
 		}
-		c.setStatus(Status.EXPLORE_LEFT);
 
-		if (grid[row][left].getStatus() == Status.HIDDEN && grid[row][left].getCount() == 0) 
-		{
-			clearRegion(grid, row, left, history);
-		}
-		c.setStatus(Status.EXPLORE_DOWN);
+		int rows = grid.getRows();
+		int cols = grid.getColumns();
+
+		// explicit stack standing in for the recursion: each entry is a cell
+		// index plus the direction it will explore next, so large regions
+		// cannot overflow the call stack
+		int[] cells = new int[64];
+		byte[] steps = new byte[64];
+		int top = 0;
 
-		if (grid[lower][col].getStatus() == Status.HIDDEN && grid[lower][col].getCount() == 0) 
+		int start = grid.index(row, col);
+		cells[top] = start;
+		steps[top] = 0;
+		top++;
+		grid.setStatus(start, Status.SEEN);
+
+		while (top > 0) 
 		{
-			clearRegion(grid, lower, col, history);
+			int c = cells[top - 1];
+			int r = c / cols;
+			int k = c % cols;
+			int d;											//Neighbor in the direction being explored, itself on a border
+
+			switch (steps[top - 1]++) 
+			{
+			case 0:
+				grid.setStatus(c, Status.EXPLORE_UP);
+				d = r > 0 ? c - cols : c;
+				break;
+			case 1:
+				grid.setStatus(c, Status.EXPLORE_LEFT);
+				d = k > 0 ? c - 1 : c;
+				break;
+			case 2:
+				grid.setStatus(c, Status.EXPLORE_DOWN);
+				d = r < rows - 1 ? c + cols : c;
+				break;
+			case 3:
+				grid.setStatus(c, Status.EXPLORE_RIGHT);
+				d = k < cols - 1 ? c + 1 : c;
+				break;
+			default:
+				grid.setStatus(c, Status.REVEALED);		//All four directions done, same as returning from the recursive call
+				revealNeighbors(grid, r, k, history);
+				top--;
+				continue;
+			}
+
+			if (grid.isHidden(d) && grid.getCount(d) == 0) 	//Searches through nearby 0s
+			{
+				if (top == cells.length) 
+				{
+					cells = Arrays.copyOf(cells, top * 2);
+					steps = Arrays.copyOf(steps, top * 2);
+				}
+				cells[top] = d;
+				steps[top] = 0;
+				top++;
+				grid.setStatus(d, Status.SEEN);
+			}
 		}
-		c.setStatus(Status.EXPLORE_RIGHT);
 
-		if (grid[row][right].getStatus() == Status.HIDDEN && grid[row][right].getCount() == 0) 
+	}
+
+	/**
+	 * Performs the same flood fill as <code>clearRegion</code>, starting at
+	 * the cell with the given index, but sets each cell straight to REVEALED
+	 * when it is first reached. This is only for grids with no cell observer.
+	 * 
+	 * @param grid
+	 *            grid of cells
+	 * @param start
+	 *            index of the initial cell
+	 * @param history
+	 *            log to which revealed cells are added
+	 */
+	private static void fillRegion(Grid grid, int start, MoveLog history) {
+		int rows = grid.getRows();
+		int cols = grid.getColumns();
+
+		int[] cells = new int[64];
+		byte[] steps = new byte[64];
+		int top = 0;
+
+		cells[top] = start;
+		steps[top] = 0;
+		top++;
+		grid.setStatus(start, Status.REVEALED);
+
+		while (top > 0) 
 		{
-			clearRegion(grid, row, right, history);
-		}
-		c.setStatus(Status.REVEALED);
-		revealNeighbors(grid, row, col, history);
+			int c = cells[top - 1];
+			int r = c / cols;
+			int k = c % cols;
+			int d;
+
+			switch (steps[top - 1]++) 
+			{
+			case 0:
+				d = r > 0 ? c - cols : c;
+				break;
+			case 1:
+				d = k > 0 ? c - 1 : c;
+				break;
+			case 2:
+				d = r < rows - 1 ? c + cols : c;
+				break;
+			case 3:
+				d = k < cols - 1 ? c + 1 : c;
+				break;
+			default:
+				revealNeighbors(grid, r, k, history);
+				top--;
+				continue;
+			}
 
+			if (grid.isHidden(d) && grid.getCount(d) == 0) 
+			{
+				if (top == cells.length) 
+				{
+					cells = Arrays.copyOf(cells, top * 2);
+					steps = Arrays.copyOf(steps, top * 2);
+				}
+				cells[top] = d;
+				steps[top] = 0;
+				top++;
+				grid.setStatus(d, Status.REVEALED);
+			}
+		}
 	}
 
 }
@@ -1,9 +1,14 @@
 package hw2;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Random;
 import api.Cell;
 import api.CellObserver;
+import api.RegionObserver;
 import api.Status;
 import api.Mark;
 
@@ -32,23 +37,37 @@ public class Minesweeper {
 	 * Number of clicks in the minesweeper game
 	 */
 	private int clickNum;
-	/**
-	 * Number of flags implemented in the minesweeper game
-	 */
-	private int flagNum;
 	/**
 	 * Boolean value telling whether the minesweeper game is over
 	 */
 	private boolean over;
 	/**
-	 * ArrayList keeping track of the history of moves made in the minesweeper
-	 * game
+	 * Log keeping track of the history of moves made in the minesweeper game
+	 */
+	private MoveLog cellHist;
+	/**
+	 * Packed grid representing the map of the minesweeper game
+	 */
+	private Grid grid;
+	/**
+	 * Stack of hidden non-mine cells with count greater than zero that
+	 * neighbor a revealed cell, most recently found on top. Cells revealed
+	 * since they were pushed are skipped when popped.
+	 */
+	private int[] frontier;
+	/**
+	 * Number of cells on the frontier stack
+	 */
+	private int frontierSize;
+	/**
+	 * Cells that have ever been pushed on the frontier stack
 	 */
-	private ArrayList<Cell> cellHist;
+	private BitSet inFrontier;
 	/**
-	 * 2D array representing the map of the minesweeper game
+	 * Reader positioned at the first history entry whose neighbors have not
+	 * been added to the frontier
 	 */
-	private Cell[][] grid;
+	private MoveLog.Reader frontierScanned;
 
 	/**
 	 * Constructs an instance of the game using the given array of strings to
@@ -65,13 +84,15 @@ public class Minesweeper {
 	public Minesweeper(String[] descriptor) {
 		grid = GridUtil.createFromStringArray(descriptor);
 		GridUtil.initCounts(grid);
-		rowSum = grid.length;
-		colSum = grid[0].length;
+		rowSum = grid.getRows();
+		colSum = grid.getColumns();
 		mineNum = GridUtil.countAllMines(grid);
 		clickNum = 0;
-		flagNum = 0;
 		over = false;
-		cellHist = new ArrayList<Cell>();
+		cellHist = new MoveLog(grid);
+		frontier = new int[16];
+		inFrontier = new BitSet(grid.size());
+		frontierScanned = cellHist.reader();
 
 	}
 
@@ -81,6 +102,11 @@ public class Minesweeper {
 	 * select the mine locations. The selection is performed in such a way that
 	 * each cell is equally likely to be selected as one of the mines. Initially
 	 * all cells have status HIDDEN and the counts are correct.
+	 * <p>
+	 * Mines are chosen with Floyd's sampling algorithm, which has the same
+	 * result as a partial Fisher-Yates shuffle of the cell indices but needs
+	 * no array of indices. It draws exactly one random number per mine, so it
+	 * takes time proportional to the number of mines whatever the density.
 	 * 
 	 * @param rows
 	 *            number of rows in the grid
@@ -91,6 +117,9 @@ public class Minesweeper {
 	 * @param givenRandom
 	 *            random number generator to use for placing mines and
 	 *            <code>randomMove</code>
+	 * @throws IllegalArgumentException
+	 *             if the number of mines is negative or greater than the number
+	 *             of cells
 	 */
 
 	public Minesweeper(int rows, int columns, int numberOfMines, Random givenRandom) {
@@ -99,39 +128,61 @@ public class Minesweeper {
 		mineNum = numberOfMines;
 		ran = givenRandom;
 		clickNum = 0;
-		flagNum = 0;
-		grid = new Cell[rowSum][colSum];
+		grid = new Grid(rowSum, colSum);			//every cell starts out hidden
 		over = false;
-		cellHist = new ArrayList<Cell>();
+		cellHist = new MoveLog(grid);
+		frontier = new int[16];
+		inFrontier = new BitSet(grid.size());
+		frontierScanned = cellHist.reader();
 
-		int x;
-		int y;
-
-		for(int i = 0; i<grid.length;i++)
+		int size = grid.size();
+		if (mineNum < 0 || mineNum > size) 
 		{
-			for(int j = 0; j<grid[0].length; j++)
-			{
-				grid[i][j] = new Cell(i,j);			//initializes every cell in the grid
-			}
-			
+			throw new IllegalArgumentException("Cannot place " + mineNum + " mines in " + size + " cells");
 		}
-		for (int i = 0; i < mineNum; i++) 			//places mines in in the minesweeper game randomly  
+
+		for (int j = size - mineNum; j < size; j++) 	//places mines in in the minesweeper game randomly  
 		{
-			x = ran.nextInt(rowSum);
-			y = ran.nextInt(colSum);
-			if (grid[x][y].isMine()) 
-			{
-				i--;					//adds an extra iteration to loop if there is already a mine placed at the given location		
-			} 
-			else 
+			int t = ran.nextInt(j + 1);
+			if (grid.isMine(t)) 
 			{
-				grid[x][y].setIsMine(true);
+				t = j;					//cells up to j-1 are the only ones that can already hold a mine, so j is always free
 			}
-
+			grid.setMine(t, true);
 		}
 		GridUtil.initCounts(grid);
 	}
 
+	/**
+	 * Constructs an instance of the game from state restored by
+	 * <code>GameFile</code>. The frontier used by <code>hint</code> is rebuilt
+	 * from the history.
+	 * 
+	 * @param givenGrid
+	 *            grid of the game
+	 * @param numberOfMines
+	 *            number of mines in the grid
+	 * @param clicks
+	 *            number of clicks made
+	 * @param isOver
+	 *            whether the game is over
+	 * @param history
+	 *            revealed cells, in the order they were revealed
+	 */
+	Minesweeper(Grid givenGrid, int numberOfMines, int clicks, boolean isOver, MoveLog history) {
+		grid = givenGrid;
+		rowSum = grid.getRows();
+		colSum = grid.getColumns();
+		mineNum = numberOfMines;
+		clickNum = clicks;
+		over = isOver;
+		cellHist = history;
+		frontier = new int[16];
+		inFrontier = new BitSet(grid.size());
+		frontierScanned = cellHist.reader();
+		updateFrontier();
+	}
+
 	/**
 	 * Returns the number of clicks for revealing a cell that have been made.
 	 * Note that this number may be smaller than the number of revealed cells.
@@ -154,13 +205,22 @@ public class Minesweeper {
 	}
 
 	/**
-	 * Returns the total number of cells with mark value FLAG.
+	 * Returns the total number of cells with mark value FLAG. The grid keeps
+	 * this count up to date as marks are toggled, so it takes constant time.
 	 * 
 	 * @return number of flagged cells
 	 */
 	public int getNumFlags() {
-		flagNum = GridUtil.countAllFlags(grid);
-		return flagNum;
+		return GridUtil.countAllFlags(grid);
+	}
+
+	/**
+	 * Returns the total number of cells with mark value QUESTION_MARK.
+	 * 
+	 * @return number of question-marked cells
+	 */
+	public int getNumQuestionMarks() {
+		return grid.getMarkCount(Mark.QUESTION_MARK);
 	}
 
 	/**
@@ -182,7 +242,9 @@ public class Minesweeper {
 	}
 
 	/**
-	 * Returns the cell at the specified position.
+	 * Returns the cell at the specified position. The returned cell is a view
+	 * onto the game's grid, so it always reflects the current state of that
+	 * position.
 	 * <p>
 	 * NOTE: The caller of this method should normally not modify the returned
 	 * cell.
@@ -194,7 +256,7 @@ public class Minesweeper {
 	 * @return cell at the given position
 	 */
 	public Cell getCell(int row, int col) {
-		Cell selected = grid[row][col];
+		Cell selected = grid.getCell(grid.index(row, col));
 		return selected;
 	}
 
@@ -209,35 +271,80 @@ public class Minesweeper {
 
 	public String[] getGridAsStringArray(boolean revealAll) 
 	{
-		String[] descriptor = new String[rowSum];			
+		return GridUtil.convertToStringArray(grid, revealAll);
+	}
 
-		for (int i = 0; i < grid.length; i++) 		//Loops through grid and places value of each cell in an string array
-		{
-			for (int j = 0; j < grid[0].length; j++) 
-			{
-				if (grid[i][j].isMine() == true) 
-				{
-					descriptor[i] += "x";
-				} 
-				else 
-				{
-					descriptor[i] += " ";
-				}
-			}
-		}
-		return null;
+	/**
+	 * Writes this game's grid to the given <code>Appendable</code>, such as a
+	 * <code>Writer</code>, one line per row, according to the conventions
+	 * described in <code>GridUtil.convertToStringArray</code>. Unlike
+	 * <code>getGridAsStringArray</code>, this does not hold the whole grid in
+	 * memory as strings.
+	 * 
+	 * @param out
+	 *            destination of the characters
+	 * @param revealAll
+	 *            true if hidden cell values should be shown
+	 * @throws IOException
+	 *             if the destination cannot be written
+	 */
+	public void writeGrid(Appendable out, boolean revealAll) throws IOException
+	{
+		GridUtil.writeTo(grid, revealAll, out);
 	}
 
 	/**
-	 * Returns a reference to the list of all revealed cells, in the order they
-	 * were revealed.
+	 * Writes this game's grid to the given channel, in the same format as
+	 * <code>writeGrid(Appendable, boolean)</code>, with one byte per
+	 * character.
+	 * 
+	 * @param channel
+	 *            destination of the bytes
+	 * @param revealAll
+	 *            true if hidden cell values should be shown
+	 * @throws IOException
+	 *             if the channel cannot be written
+	 */
+	public void writeGrid(WritableByteChannel channel, boolean revealAll) throws IOException
+	{
+		GridUtil.writeTo(grid, revealAll, channel);
+	}
+
+	/**
+	 * Returns the grid of this game. This is for other classes of the package,
+	 * such as the solver, that need to read many cells without creating a
+	 * <code>Cell</code> for each one.
+	 * 
+	 * @return grid of the game
+	 */
+	Grid getGrid() 
+	{
+		return grid;
+	}
+
+	/**
+	 * Returns a read-only list of all revealed cells, in the order they were
+	 * revealed. The list is a view of the move log, so it stays up to date,
+	 * and its cells are created as they are read.
 	 * <p>
-	 * NOTE: The caller of this method should normally not modify the returned
-	 * list or the cells it contains.
+	 * NOTE: The caller of this method should normally not modify the cells the
+	 * returned list contains.
 	 * 
 	 * @return list of all revealed cells
 	 */
-	public ArrayList<Cell> getHistory() 
+	public List<Cell> getHistory() 
+	{
+		return cellHist.asList();
+	}
+
+	/**
+	 * Returns the log of all revealed cells, grouped by the move that revealed
+	 * them. This is the compact form of <code>getHistory</code>, for replaying
+	 * or analyzing a game.
+	 * 
+	 * @return log of revealed cells
+	 */
+	public MoveLog getMoveLog() 
 	{
 		return cellHist;
 	}
@@ -266,16 +373,18 @@ public class Minesweeper {
 	 */
 	public void toggleMark(int row, int col) 
 	{
-		if (grid[row][col].getMark() == Mark.NONE) 			//Changes mark on a cell on the grid based on its previous mark
+		int c = grid.index(row, col);
+		if (grid.getMark(c) == Mark.NONE) 			//Changes mark on a cell on the grid based on its previous mark
 		{
-			grid[row][col].setMark(Mark.FLAG);
-		} else if (grid[row][col].getMark() == Mark.FLAG) 
+			grid.setMark(c, Mark.FLAG);
+		} else if (grid.getMark(c) == Mark.FLAG) 
 		{
-			grid[row][col].setMark(Mark.QUESTION_MARK);
+			grid.setMark(c, Mark.QUESTION_MARK);
 		} else 
 		{
-			grid[row][col].setMark(Mark.NONE);
+			grid.setMark(c, Mark.NONE);
 		}
+		grid.fireChanges();
 	}
 
 	/**
@@ -284,9 +393,9 @@ public class Minesweeper {
 	 * a cell with count zero should initiate a call to
 	 * <code>GridUtil.clearRegion</code>. However, a special case is made for
 	 * the first selection: if the player selects a mine as the first move, the
-	 * cell is first converted to a non-mine and the count is adjusted, and then
-	 * the selection is processed normally. This method does nothing if the game
-	 * is over.
+	 * mine is first moved to another cell and the counts around both cells are
+	 * adjusted, and then the selection is processed normally. This method does
+	 * nothing if the game is over.
 	 * 
 	 * @param row
 	 *            given position row
@@ -297,19 +406,21 @@ public class Minesweeper {
 	{
 		if (over == false) 
 		{
-			grid[row][col].setStatus(Status.REVEALED);
+			int c = grid.index(row, col);
+			cellHist.beginMove();
+			if (grid.isMine(c) && clickNum == 0) 
+			{
+				relocateMine(c);						//Accounts for clicking on a mine for the first click
+			}
+
+			grid.setStatus(c, Status.REVEALED);
 
-			if (grid[row][col].getCount() == 0) 
+			if (grid.getCount(c) == 0) 
 			{
 				GridUtil.clearRegion(grid, row, col, cellHist);		//Clears region if player clicks on a cell with 0-value
 			}
 
-			if (grid[row][col].isMine() && clickNum == 0) 
-			{
-				grid[row][col].setIsMine(false);
-				GridUtil.initCounts(grid);						//Accounts for clicking on a mine for the first click
-			} 
-			else if (grid[row][col].isMine()) 
+			if (grid.isMine(c)) 
 			{
 				GridUtil.revealAllMines(grid);	//Accounts for clicking on a mine
 				over = true;
@@ -320,71 +431,159 @@ public class Minesweeper {
 				over = true;
 			}
 
-			cellHist.add(grid[row][col]);
+			cellHist.add(c);
 			clickNum++;
+			updateFrontier();
+			grid.fireChanges();
 		}
 	}
 
 	/**
-	 * Returns whether or not the game has been won.
+	 * Moves the mine at the given index to another non-mine cell, so the number
+	 * of mines stays the same, and recomputes only the counts around the old
+	 * and new locations. The search for a free cell starts at a random index if
+	 * the game has a <code>Random</code>, or at the top left otherwise, and
+	 * normally stops after a few cells. If every other cell is a mine, the mine
+	 * is removed instead.
 	 * 
-	 * @return true if the game is won, false otherwise
+	 * @param index
+	 *            index of the mine to move
 	 */
-	public boolean isWon() 
+	private void relocateMine(int index) 
 	{
-		
-		boolean won = true;
-		for (int i = 0; i < rowSum; i++) 
+		int size = grid.size();
+		int t = ran != null ? ran.nextInt(size) : 0;
+		int target = -1;
+		for (int k = 0; k < size && target < 0; k++) 
 		{
-			for (int j = 0; j < colSum; j++) 
+			if (t != index && !grid.isMine(t)) 
 			{
-				if (grid[i][j].getStatus() == Status.HIDDEN && grid[i][j].isMine() == false) 
-				{
-					won = false;
-				}
+				target = t;
 			}
+			t = t + 1 == size ? 0 : t + 1;
+		}
+
+		grid.setMine(index, false);
+		GridUtil.updateCounts(grid, grid.getRow(index), grid.getCol(index));
+		if (target >= 0) 
+		{
+			grid.setMine(target, true);
+			GridUtil.updateCounts(grid, grid.getRow(target), grid.getCol(target));
+		} 
+		else 
+		{
+			mineNum--;
 		}
-		return won;
 	}
 
 	/**
-	 * Iterates over the history of revealed cells, in reverse order, to find a
-	 * neighboring cell that is still hidden and has count greater than zero,
-	 * and then reveals the first such cell found. If the history is empty or no
-	 * such cell exists, this method does nothing. (The latter can only occur if
-	 * all remaining hidden non-mine cells have count zero.)
+	 * Returns whether or not the game has been won. The grid keeps count of
+	 * the non-mine cells still hidden as cells are revealed by
+	 * <code>play</code>, <code>hint</code> and the flood fill, so this takes
+	 * constant time.
+	 * 
+	 * @return true if the game is won, false otherwise
 	 */
-	public void hint() {
+	public boolean isWon() 
+	{
+		return GridUtil.areAllCellsRevealed(grid);
+	}
+
+	/**
+	 * Finds a cell that is still hidden, is not a mine, has count greater than
+	 * zero and neighbors a revealed cell, and reveals it. Candidates are kept
+	 * in a frontier that is updated as cells are revealed, and the most
+	 * recently found one is chosen, so this takes constant time instead of a
+	 * search through the history. If the history is empty, no such cell exists
+	 * or the game is over, this method does nothing and returns false. (No
+	 * such cell can only occur if all remaining hidden non-mine cells have
+	 * count zero.)
+	 * 
+	 * @return true if a cell was revealed, false otherwise
+	 */
+	public boolean hint() {
 		
-		while(over == false)
+		if (over == false)
 		{			
-			for (int i = cellHist.size() - 1; i >= 0; i--) {
-				Cell hidden = GridUtil.findOneHiddenNeighbor(grid, cellHist.get(i).getRow(), cellHist.get(i).getCol());  //Gets cell value from history arraylist to find nearby cell
-				if (hidden != null && hidden.isMine() != true && hidden.getCount() > 0) 
+			while (frontierSize > 0) 
+			{
+				int c = frontier[--frontierSize];
+				if (grid.isHidden(c))			//Skips cells revealed since they joined the frontier
 				{
-					grid[hidden.getRow()][hidden.getCol()].setStatus(Status.REVEALED);
-					cellHist.add(hidden);
-					return;
+					grid.setStatus(c, Status.REVEALED);
+					cellHist.beginMove();
+					cellHist.add(c);
+					if (isWon() == true) 
+					{
+						GridUtil.flagAllMines(grid);	//Accounts for a hint revealing the last cell
+						over = true;
+					}
+					updateFrontier();
+					grid.fireChanges();
+					return true;
 				}
 			}
 		}	
+		return false;
 	}
 
 	/**
-	 * Calls setObserver with the given <code>CellObserver</code> on every cell
-	 * of the grid.
-	 * 
-	 * @param observer
-	 *            reference to a <code>CellObserver</code>
+	 * Adds the qualifying neighbors of every history entry not yet examined to
+	 * the frontier. Neighbors are pushed in reverse order so that the first
+	 * one, in row-major order, of the newest entry ends up on top.
 	 */
-	public void setObserver(CellObserver observer) {
-		for (int i = 0; i < rowSum; i++) 
+	private void updateFrontier() 
+	{
+		while (frontierScanned.hasNext()) 
 		{
-			for (int j = 0; j < colSum; j++) 
+			int revealed = frontierScanned.next();
+			int upper = Math.max(0, grid.getRow(revealed) - 1);
+			int lower = Math.min(rowSum - 1, grid.getRow(revealed) + 1);
+			int left = Math.max(0, grid.getCol(revealed) - 1);
+			int right = Math.min(colSum - 1, grid.getCol(revealed) + 1);
+
+			for (int row = lower; row >= upper; row--) 
 			{
-				grid[i][j].setObserver(observer);
+				for (int col = right; col >= left; col--) 
+				{
+					int c = grid.index(row, col);
+					if (grid.isHidden(c) && !grid.isMine(c) && grid.getCount(c) > 0 && !inFrontier.get(c)) 
+					{
+						if (frontierSize == frontier.length) 
+						{
+							frontier = Arrays.copyOf(frontier, frontierSize * 2);
+						}
+						frontier[frontierSize++] = c;
+						inFrontier.set(c);
+					}
+				}
 			}
 		}
+	}
 
+	/**
+	 * Sets the given <code>CellObserver</code> to be notified when the status
+	 * of any cell of the grid changes, including every intermediate step of a
+	 * flood fill. This is only needed to animate the fill; otherwise a
+	 * <code>RegionObserver</code> is much cheaper.
+	 * 
+	 * @param observer
+	 *            reference to a <code>CellObserver</code>, or null for none
+	 */
+	public void setObserver(CellObserver observer) {
+		grid.setObserver(observer);
+	}
+
+	/**
+	 * Sets the given <code>RegionObserver</code> to be notified once at the
+	 * end of each call to <code>play</code>, <code>hint</code> or
+	 * <code>toggleMark</code> that changes the grid, with all the cells that
+	 * call changed.
+	 * 
+	 * @param observer
+	 *            reference to a <code>RegionObserver</code>, or null for none
+	 */
+	public void setRegionObserver(RegionObserver observer) {
+		grid.setRegionObserver(observer);
 	}
 }
@@ -0,0 +1,511 @@
+package hw2;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import api.Cell;
+
+/**
+ * Compact record of the cells revealed in a game, in the order they were
+ * revealed, grouped by the move (click or hint) that revealed them.
+ * <p>
+ * Each entry is stored as the difference between its cell index and the
+ * previous entry's, zigzag encoded so small negative differences stay small,
+ * and written as a varint: seven bits per byte, with the high bit set on every
+ * byte but the last. Cells revealed by a flood fill are almost always close to
+ * the previous one, so most entries take one or two bytes, compared to a
+ * reference plus a <code>Cell</code> object for each entry in a list.
+ * <p>
+ * Varints can only be decoded in order, so every <code>CHECKPOINT</code>
+ * entries the log remembers where the entry starts and the index before it.
+ * Reading entry i then decodes at most <code>CHECKPOINT</code> entries.
+ * <p>
+ * The log can be read with a <code>Reader</code>, which streams through the
+ * entries and also sees entries added after it was created, or through the
+ * read-only <code>List</code> returned by <code>asList</code>, which creates
+ * a cell view for each entry only when it is asked for.
+ */
+public class MoveLog
+{
+	/**
+	 * log2 of <code>CHECKPOINT</code>
+	 */
+	private static final int CHECKPOINT_BITS = 6;
+	/**
+	 * Number of entries between checkpoints
+	 */
+	private static final int CHECKPOINT = 1 << CHECKPOINT_BITS;
+
+	/**
+	 * Grid the indices refer to
+	 */
+	private final Grid grid;
+	/**
+	 * Encoded entries
+	 */
+	private byte[] data;
+	/**
+	 * Number of bytes of <code>data</code> in use
+	 */
+	private int length;
+	/**
+	 * Number of entries
+	 */
+	private int size;
+	/**
+	 * Index of the last entry, or 0 if there is none
+	 */
+	private int last;
+	/**
+	 * Position in <code>data</code> of every <code>CHECKPOINT</code>th entry
+	 */
+	private int[] checkpointOffsets;
+	/**
+	 * Index of the entry before every <code>CHECKPOINT</code>th entry, or 0
+	 * for the first
+	 */
+	private int[] checkpointIndices;
+	/**
+	 * Number of the first entry of each move
+	 */
+	private int[] moveStarts;
+	/**
+	 * Number of moves
+	 */
+	private int moves;
+
+	/**
+	 * Constructs an empty log for cells of the given grid.
+	 *
+	 * @param givenGrid
+	 *            grid the logged cells belong to
+	 */
+	public MoveLog(Grid givenGrid)
+	{
+		grid = givenGrid;
+		data = new byte[64];
+		checkpointOffsets = new int[4];
+		checkpointIndices = new int[4];
+		moveStarts = new int[16];
+	}
+
+	/**
+	 * Constructs a log from entries already encoded, such as those saved by
+	 * <code>GameFile</code>. The checkpoints are rebuilt in one pass over the
+	 * data, which creates no objects.
+	 *
+	 * @param givenGrid
+	 *            grid the logged cells belong to
+	 * @param encoded
+	 *            encoded entries, which the log takes ownership of
+	 * @param entries
+	 *            number of entries encoded
+	 * @param starts
+	 *            number of the first entry of each move, which the log takes
+	 *            ownership of
+	 * @throws IllegalArgumentException
+	 *             if the data does not hold exactly the given number of
+	 *             entries, or refers to cells outside the grid
+	 */
+	MoveLog(Grid givenGrid, byte[] encoded, int entries, int[] starts)
+	{
+		grid = givenGrid;
+		data = encoded.length > 0 ? encoded : new byte[64];
+		checkpointOffsets = new int[Math.max(4, (entries >> CHECKPOINT_BITS) + 1)];
+		checkpointIndices = new int[checkpointOffsets.length];
+		moveStarts = starts.length > 0 ? starts : new int[16];
+		moves = starts.length;
+
+		int offset = 0;
+		for (int i = 0; i < entries; i++)
+		{
+			if ((i & (CHECKPOINT - 1)) == 0)
+			{
+				checkpointOffsets[i >> CHECKPOINT_BITS] = offset;
+				checkpointIndices[i >> CHECKPOINT_BITS] = last;
+			}
+			int delta = 0;
+			int shift = 0;
+			int b;
+			do
+			{
+				if (offset >= encoded.length || shift > 28)
+				{
+					throw new IllegalArgumentException("Corrupt move log");
+				}
+				b = encoded[offset++];
+				delta |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			last += (delta >>> 1) ^ -(delta & 1);
+			if (last < 0 || last >= grid.size())
+			{
+				throw new IllegalArgumentException("Corrupt move log");
+			}
+		}
+		if (offset != encoded.length)
+		{
+			throw new IllegalArgumentException("Corrupt move log");
+		}
+		length = offset;
+		size = entries;
+	}
+
+	/**
+	 * Starts a new move. Entries added from now on belong to it.
+	 */
+	void beginMove()
+	{
+		if (moves == moveStarts.length)
+		{
+			moveStarts = Arrays.copyOf(moveStarts, moves * 2);
+		}
+		moveStarts[moves++] = size;
+	}
+
+	/**
+	 * Adds an entry for the cell with the given index to the current move,
+	 * starting a move first if there is none.
+	 *
+	 * @param index
+	 *            index of a revealed cell
+	 */
+	void add(int index)
+	{
+		if (moves == 0)
+		{
+			beginMove();
+		}
+		if ((size & (CHECKPOINT - 1)) == 0)
+		{
+			int k = size >> CHECKPOINT_BITS;
+			if (k == checkpointOffsets.length)
+			{
+				checkpointOffsets = Arrays.copyOf(checkpointOffsets, k * 2);
+				checkpointIndices = Arrays.copyOf(checkpointIndices, k * 2);
+			}
+			checkpointOffsets[k] = length;
+			checkpointIndices[k] = last;
+		}
+		if (length + 5 > data.length)
+		{
+			data = Arrays.copyOf(data, Math.max(data.length * 2, length + 5));
+		}
+
+		int delta = index - last;
+		int v = (delta << 1) ^ (delta >> 31);
+		while ((v & ~0x7F) != 0)
+		{
+			data[length++] = (byte) (v | 0x80);
+			v >>>= 7;
+		}
+		data[length++] = (byte) v;
+		last = index;
+		size++;
+	}
+
+	/**
+	 * Returns the number of entries.
+	 *
+	 * @return number of revealed cells logged
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the number of moves.
+	 *
+	 * @return number of moves
+	 */
+	public int getMoveCount()
+	{
+		return moves;
+	}
+
+	/**
+	 * Returns the number of the first entry of the given move. The entries of
+	 * a move run up to the first entry of the next one.
+	 *
+	 * @param move
+	 *            number of a move
+	 * @return number of its first entry
+	 */
+	public int getMoveStart(int move)
+	{
+		if (move < 0 || move >= moves)
+		{
+			throw new IndexOutOfBoundsException("Move " + move + " of " + moves);
+		}
+		return moveStarts[move];
+	}
+
+	/**
+	 * Returns the cell index of the given entry. This decodes at most
+	 * <code>CHECKPOINT</code> entries.
+	 *
+	 * @param i
+	 *            number of an entry
+	 * @return index of the cell
+	 */
+	public int get(int i)
+	{
+		if (i < 0 || i >= size)
+		{
+			throw new IndexOutOfBoundsException("Entry " + i + " of " + size);
+		}
+		Reader r = reader(i);
+		return r.next();
+	}
+
+	/**
+	 * Returns the number of bytes used to hold the log, not counting unused
+	 * capacity.
+	 *
+	 * @return size in bytes
+	 */
+	public long getByteSize()
+	{
+		return length + 8L * ((size + CHECKPOINT - 1) >> CHECKPOINT_BITS) + 4L * moves;
+	}
+
+	/**
+	 * Returns a reader positioned at the first entry.
+	 *
+	 * @return new reader
+	 */
+	public Reader reader()
+	{
+		return new Reader(0);
+	}
+
+	/**
+	 * Returns a reader positioned at the given entry.
+	 *
+	 * @param from
+	 *            number of the first entry to read, up to <code>size()</code>
+	 * @return new reader
+	 */
+	public Reader reader(int from)
+	{
+		if (from < 0 || from > size)
+		{
+			throw new IndexOutOfBoundsException("Entry " + from + " of " + size);
+		}
+		return new Reader(from);
+	}
+
+	/**
+	 * Returns a read-only list of the logged cells. The list reads through to
+	 * this log, so it includes entries added later, and each cell is a view
+	 * onto the grid created when it is asked for. Getting an element by
+	 * position takes time bounded by <code>CHECKPOINT</code>; going through
+	 * the list with an iterator takes constant time per element.
+	 *
+	 * @return list view of the log
+	 */
+	public List<Cell> asList()
+	{
+		return new AbstractList<Cell>()
+		{
+			@Override
+			public Cell get(int i)
+			{
+				return grid.getCell(MoveLog.this.get(i));
+			}
+
+			@Override
+			public int size()
+			{
+				return size;
+			}
+
+			@Override
+			public Iterator<Cell> iterator()
+			{
+				final Reader r = reader();
+				return new Iterator<Cell>()
+				{
+					@Override
+					public boolean hasNext()
+					{
+						return r.hasNext();
+					}
+
+					@Override
+					public Cell next()
+					{
+						if (!r.hasNext())
+						{
+							throw new NoSuchElementException();
+						}
+						return grid.getCell(r.next());
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Returns the array holding the encoded entries, for saving. Only the
+	 * first <code>getEncodedLength()</code> bytes are in use, and the array
+	 * must not be changed.
+	 *
+	 * @return encoded entries
+	 */
+	byte[] getEncoded()
+	{
+		return data;
+	}
+
+	/**
+	 * Returns the number of bytes of encoded entries.
+	 *
+	 * @return length of the encoded entries
+	 */
+	int getEncodedLength()
+	{
+		return length;
+	}
+
+	/**
+	 * Returns the number of the first entry of every move, for saving.
+	 *
+	 * @return array with one element per move
+	 */
+	int[] getMoveStarts()
+	{
+		return Arrays.copyOf(moveStarts, moves);
+	}
+
+	/**
+	 * Reads the entries of the log in order. A reader that has reached the end
+	 * can carry on once more entries are added.
+	 */
+	public class Reader
+	{
+		/**
+		 * Position in <code>data</code> of the next entry
+		 */
+		private int offset;
+		/**
+		 * Number of the next entry
+		 */
+		private int next;
+		/**
+		 * Index of the entry before the next one
+		 */
+		private int previous;
+		/**
+		 * Move of the entry returned last, or -1
+		 */
+		private int move;
+
+		private Reader(int from)
+		{
+			int k = from >> CHECKPOINT_BITS;
+			if ((k << CHECKPOINT_BITS) < size)
+			{
+				offset = checkpointOffsets[k];
+				previous = checkpointIndices[k];
+				next = k << CHECKPOINT_BITS;
+			}
+			else
+			{
+				// positioned at the end, right on a checkpoint not yet made
+				offset = length;
+				previous = last;
+				next = size;
+			}
+			while (next < from)
+			{
+				next();
+			}
+
+			// the move holding entry from - 1
+			int lo = 0;
+			int hi = moves - 1;
+			move = -1;
+			while (lo <= hi)
+			{
+				int mid = (lo + hi) >>> 1;
+				if (moveStarts[mid] <= from - 1)
+				{
+					move = mid;
+					lo = mid + 1;
+				}
+				else
+				{
+					hi = mid - 1;
+				}
+			}
+		}
+
+		/**
+		 * Returns whether there is another entry to read.
+		 *
+		 * @return true if <code>next</code> can be called
+		 */
+		public boolean hasNext()
+		{
+			return next < size;
+		}
+
+		/**
+		 * Returns the cell index of the next entry and moves past it.
+		 *
+		 * @return index of the cell
+		 * @throws NoSuchElementException
+		 *             if there are no more entries
+		 */
+		public int next()
+		{
+			if (next >= size)
+			{
+				throw new NoSuchElementException();
+			}
+			int v = 0;
+			int shift = 0;
+			int b;
+			do
+			{
+				b = data[offset++];
+				v |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			previous += (v >>> 1) ^ -(v & 1);
+
+			while (move + 1 < moves && moveStarts[move + 1] <= next)
+			{
+				move++;
+			}
+			next++;
+			return previous;
+		}
+
+		/**
+		 * Returns the number of the move that revealed the entry returned
+		 * last, or -1 if none has been returned.
+		 *
+		 * @return number of a move
+		 */
+		public int getMove()
+		{
+			return move;
+		}
+
+		/**
+		 * Returns the number of entries before the next one.
+		 *
+		 * @return position of this reader
+		 */
+		public int position()
+		{
+			return next;
+		}
+	}
+}
@@ -0,0 +1,876 @@
+package hw2;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the exact probability that each hidden cell of a minesweeper game
+ * is a mine, for use when deduction alone gets stuck. Like <code>Solver</code>,
+ * it only uses what a player can see.
+ * <p>
+ * The constraints the solver could not settle are split into independent
+ * components: groups of constraints that share unknown cells with each other
+ * but not with any other group. For each component the number of solutions
+ * with each possible number of mines is counted, along with how many of those
+ * put a mine in each of its cells. Counting walks the component's cells in
+ * order, merging partial assignments that leave the same mines still needed
+ * by the constraints in progress, so long thin components cost far less than
+ * enumerating every assignment. Components are then combined, weighting each
+ * total number of mines on the boundary by the number of ways to place the
+ * remaining mines among the cells no constraint touches.
+ * <p>
+ * Components that need counting are solved in parallel on the common
+ * <code>ForkJoinPool</code>. Results are cached by the exact contents of the
+ * component, so after a move only the components it changed are counted
+ * again.
+ */
+public class ProbabilitySolver
+{
+	/**
+	 * The game being solved
+	 */
+	private final Minesweeper game;
+	/**
+	 * Grid of the game, only read where a player could see it
+	 */
+	private final Grid grid;
+	/**
+	 * Solver used to settle everything that can be deduced
+	 */
+	private final Solver solver;
+	/**
+	 * Hidden cells known to be safe, as of the last update
+	 */
+	private BitSet safe;
+	/**
+	 * Components found by the last update, by contents
+	 */
+	private HashMap<String, Component> cache;
+	/**
+	 * Mine probability of each cell on the boundary
+	 */
+	private HashMap<Integer, Double> boundary;
+	/**
+	 * Mine probability of every hidden cell not touched by a constraint
+	 */
+	private double otherProbability;
+
+	/**
+	 * Constructs a probability solver for the given game. Nothing is computed
+	 * until <code>update</code> is called.
+	 *
+	 * @param givenGame
+	 *            game to solve
+	 */
+	public ProbabilitySolver(Minesweeper givenGame)
+	{
+		game = givenGame;
+		grid = givenGame.getGrid();
+		solver = new Solver(givenGame);
+		cache = new HashMap<String, Component>();
+		boundary = new HashMap<Integer, Double>();
+		safe = new BitSet();
+	}
+
+	/**
+	 * Returns the deterministic solver this probability solver uses. It is
+	 * brought up to date by every call to <code>update</code>.
+	 *
+	 * @return the solver
+	 */
+	public Solver getSolver()
+	{
+		return solver;
+	}
+
+	/**
+	 * Recomputes the probabilities for the current state of the game.
+	 */
+	public void update()
+	{
+		solver.update();
+		safe = solver.getSafeCells();
+
+		ArrayList<Component> components = findComponents();
+		HashMap<String, Component> found = new HashMap<String, Component>();
+		ArrayList<Component> todo = new ArrayList<Component>();
+		for (int i = 0; i < components.size(); i++)
+		{
+			Component c = components.get(i);
+			Component cached = cache.get(c.key);
+			if (cached != null)
+			{
+				components.set(i, cached);
+			}
+			else
+			{
+				todo.add(c);
+			}
+			found.put(c.key, components.get(i));
+		}
+		if (!todo.isEmpty())
+		{
+			ForkJoinPool.commonPool().invoke(new SolveTask(todo, 0, todo.size()));
+		}
+		cache = found;
+
+		combine(components);
+	}
+
+	/**
+	 * Returns the probability, as of the last update, that the cell at the
+	 * given position is a mine. Revealed cells and cells known to be safe have
+	 * probability 0, and cells known to be mines have probability 1.
+	 *
+	 * @param row
+	 *            given position row
+	 * @param col
+	 *            given position column
+	 * @return probability of a mine
+	 */
+	public double getProbability(int row, int col)
+	{
+		int x = grid.index(row, col);
+		if (!grid.isHidden(x) || safe.get(x))
+		{
+			return 0;
+		}
+		if (solver.getMines().get(x))
+		{
+			return 1;
+		}
+		Double p = boundary.get(x);
+		return p != null ? p : otherProbability;
+	}
+
+	/**
+	 * Returns whether the cell at the given position was on the boundary as
+	 * of the last update, that is, a hidden cell next to a revealed cell whose
+	 * constraint the solver could not settle.
+	 *
+	 * @param row
+	 *            given position row
+	 * @param col
+	 *            given position column
+	 * @return true if the cell has a probability of its own
+	 */
+	public boolean isOnBoundary(int row, int col)
+	{
+		return boundary.containsKey(grid.index(row, col));
+	}
+
+	/**
+	 * Returns the probability, as of the last update, that a hidden cell with
+	 * no revealed neighbor is a mine.
+	 *
+	 * @return probability of a mine
+	 */
+	public double getOtherProbability()
+	{
+		return otherProbability;
+	}
+
+	/**
+	 * Returns the cell next to a revealed cell that is least likely to be a
+	 * mine, as of the last update, or -1 if there is none or if cells with no
+	 * revealed neighbor are less likely to be mines.
+	 *
+	 * @return index of a cell, or -1
+	 */
+	public int getBestGuess()
+	{
+		int best = -1;
+		double p = otherProbability;
+		for (Map.Entry<Integer, Double> e : boundary.entrySet())
+		{
+			// a boundary cell as likely as the others is still preferred
+			if (e.getValue() < p || (best < 0 && e.getValue() == p))
+			{
+				p = e.getValue();
+				best = e.getKey();
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Groups the open constraints of the solver into components. Cells of a
+	 * component are numbered in the order they are reached by a breadth-first
+	 * walk, which keeps the constraints in progress during counting few.
+	 *
+	 * @return list of components
+	 */
+	private ArrayList<Component> findComponents()
+	{
+		int rows = grid.getRows();
+		int cols = grid.getColumns();
+		ArrayList<Component> components = new ArrayList<Component>();
+		HashSet<Integer> done = new HashSet<Integer>();
+		ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+
+		for (int a : solver.getOpenConstraints())
+		{
+			if (!done.add(a))
+			{
+				continue;
+			}
+			ArrayList<Integer> constraints = new ArrayList<Integer>();
+			LinkedHashMap<Integer, Integer> cells = new LinkedHashMap<Integer, Integer>();
+			queue.add(a);
+			while (!queue.isEmpty())
+			{
+				int x = queue.poll();
+				constraints.add(x);
+				int mask = solver.getUnknownCells(x);
+				for (int i = 0; i < 8; i++)
+				{
+					if ((mask & (1 << i)) == 0)
+					{
+						continue;
+					}
+					int vr = grid.getRow(x) + Solver.DR[i];
+					int vc = grid.getCol(x) + Solver.DC[i];
+					int v = grid.index(vr, vc);
+					if (cells.containsKey(v))
+					{
+						continue;
+					}
+					cells.put(v, cells.size());
+
+					// every other constraint this cell belongs to
+					for (int j = 0; j < 8; j++)
+					{
+						int yr = vr + Solver.DR[j];
+						int yc = vc + Solver.DC[j];
+						if (yr >= 0 && yr < rows && yc >= 0 && yc < cols)
+						{
+							int y = grid.index(yr, yc);
+							if ((solver.getUnknownCells(y) & (1 << (7 - j))) != 0 && done.add(y))
+							{
+								queue.add(y);
+							}
+						}
+					}
+				}
+			}
+			components.add(newComponent(constraints, cells));
+		}
+		return components;
+	}
+
+	/**
+	 * Builds a component from its constraints and cells.
+	 *
+	 * @param constraints
+	 *            indices of the constraints
+	 * @param cellIds
+	 *            position in counting order of each cell, by index
+	 * @return the component, not yet solved
+	 */
+	private Component newComponent(ArrayList<Integer> constraints, LinkedHashMap<Integer, Integer> cellIds)
+	{
+		int[] cells = new int[cellIds.size()];
+		for (Map.Entry<Integer, Integer> e : cellIds.entrySet())
+		{
+			cells[e.getValue()] = e.getKey();
+		}
+
+		Integer[] sorted = constraints.toArray(new Integer[constraints.size()]);
+		Arrays.sort(sorted);
+		StringBuilder key = new StringBuilder();
+		int[] need = new int[sorted.length];
+		int[][] members = new int[sorted.length][];
+		for (int k = 0; k < sorted.length; k++)
+		{
+			int x = sorted[k];
+			int mask = solver.getUnknownCells(x);
+			need[k] = solver.getMinesNeeded(x);
+			key.append(x).append(',').append(mask).append(',').append(need[k]).append(';');
+
+			members[k] = new int[Integer.bitCount(mask)];
+			int m = 0;
+			for (int i = 0; i < 8; i++)
+			{
+				if ((mask & (1 << i)) != 0)
+				{
+					int v = grid.index(grid.getRow(x) + Solver.DR[i], grid.getCol(x) + Solver.DC[i]);
+					members[k][m++] = cellIds.get(v);
+				}
+			}
+		}
+		return new Component(key.toString(), cells, need, members);
+	}
+
+	/**
+	 * Combines the counts of all components into probabilities, weighting
+	 * each total number of boundary mines by the number of ways to place the
+	 * rest of the mines among the other hidden cells.
+	 *
+	 * @param components
+	 *            solved components
+	 */
+	private void combine(ArrayList<Component> components)
+	{
+		int n = components.size();
+		int knownMines = solver.getMines().cardinality();
+		int hidden = grid.getHiddenSafeCount() + game.getNumMines();
+		int others = hidden - knownMines - safe.cardinality();
+		for (Component c : components)
+		{
+			others -= c.cells.length;
+		}
+		int remaining = game.getNumMines() - knownMines;
+
+		// prefix[i] is the product of the totals of the components before i,
+		// dropping mine counts above what is left
+		double[][] prefix = new double[n + 1][];
+		prefix[0] = new double[] { 1 };
+		for (int i = 0; i < n; i++)
+		{
+			double[] p = multiply(prefix[i], components.get(i).total);
+			prefix[i + 1] = Arrays.copyOf(p, Math.min(p.length, remaining + 1));
+		}
+		double[] weights = weights(others, remaining, prefix[n].length);
+
+		// going backward, after[s] is the weight of s mines in the components
+		// before i, summed over every way to fill in component i onward and
+		// the other cells
+		double[] after = weights;
+		HashMap<Integer, Double> probabilities = new HashMap<Integer, Double>();
+		for (int i = n - 1; i >= 0; i--)
+		{
+			Component c = components.get(i);
+			double[] before = prefix[i];
+
+			// weight of the component having a given number of mines
+			double[] w = new double[c.total.length];
+			for (int a = 0; a < w.length; a++)
+			{
+				for (int s = 0; s < before.length && s + a < after.length; s++)
+				{
+					w[a] += before[s] * after[s + a];
+				}
+			}
+			for (int v = 0; v < c.cells.length; v++)
+			{
+				double mine = 0;
+				double all = 0;
+				for (int a = 0; a < w.length; a++)
+				{
+					mine += c.mineWays[v][a] * w[a];
+					all += c.allWays[v][a] * w[a];
+				}
+				probabilities.put(c.cells[v], all > 0 ? mine / all : 0);
+			}
+
+			double[] next = new double[before.length];
+			for (int s = 0; s < next.length; s++)
+			{
+				for (int a = 0; a < c.total.length && s + a < after.length; a++)
+				{
+					next[s] += c.total[a] * after[s + a];
+				}
+			}
+			after = normalize(next);
+		}
+		boundary = probabilities;
+
+		double mine = 0;
+		double all = 0;
+		for (int s = 0; s < prefix[n].length; s++)
+		{
+			all += prefix[n][s] * weights[s];
+			if (others > 0)
+			{
+				mine += prefix[n][s] * weights[s] * (remaining - s) / others;
+			}
+		}
+		otherProbability = all > 0 ? mine / all : 0;
+	}
+
+	/**
+	 * Returns, for each number s of boundary mines, the number of ways to place
+	 * the remaining mines among the other cells, scaled so the largest is 1.
+	 *
+	 * @param others
+	 *            number of hidden cells off the boundary
+	 * @param remaining
+	 *            number of mines not known
+	 * @param length
+	 *            number of weights to return
+	 * @return weights, 0 where the remaining mines cannot fit
+	 */
+	private static double[] weights(int others, int remaining, int length)
+	{
+		// log C(others, remaining - s), built up from the smallest valid s
+		// using C(n, t) / C(n, t + 1) = (t + 1) / (n - t)
+		double[] log = new double[length];
+		int first = Math.max(0, remaining - others);
+		int last = Math.min(length - 1, remaining);
+		double max = 0;
+		for (int s = first + 1; s <= last; s++)
+		{
+			int t = remaining - s;
+			log[s] = log[s - 1] + Math.log((t + 1.0) / (others - t));
+			max = Math.max(max, log[s]);
+		}
+
+		double[] w = new double[length];
+		for (int s = first; s <= last; s++)
+		{
+			w[s] = Math.exp(log[s] - max);
+		}
+		return w;
+	}
+
+	/**
+	 * Multiplies two polynomials, scaling the result so its largest
+	 * coefficient is 1.
+	 *
+	 * @param p
+	 *            coefficients of the first polynomial
+	 * @param q
+	 *            coefficients of the second polynomial
+	 * @return coefficients of the scaled product
+	 */
+	private static double[] multiply(double[] p, double[] q)
+	{
+		return normalize(product(p, q));
+	}
+
+	/**
+	 * Multiplies two polynomials.
+	 *
+	 * @param p
+	 *            coefficients of the first polynomial
+	 * @param q
+	 *            coefficients of the second polynomial
+	 * @return coefficients of the product
+	 */
+	private static double[] product(double[] p, double[] q)
+	{
+		double[] r = new double[p.length + q.length - 1];
+		for (int i = 0; i < p.length; i++)
+		{
+			if (p[i] != 0)
+			{
+				for (int j = 0; j < q.length; j++)
+				{
+					r[i + j] += p[i] * q[j];
+				}
+			}
+		}
+		return r;
+	}
+
+	/**
+	 * Scales the given coefficients so the largest is 1, unless all are 0.
+	 *
+	 * @param p
+	 *            coefficients to scale in place
+	 * @return the same array
+	 */
+	private static double[] normalize(double[] p)
+	{
+		double max = 0;
+		for (double x : p)
+		{
+			max = Math.max(max, x);
+		}
+		if (max > 0)
+		{
+			for (int i = 0; i < p.length; i++)
+			{
+				p[i] /= max;
+			}
+		}
+		return p;
+	}
+
+	/**
+	 * Adds the coefficients of p, shifted up by the given amount, to those of
+	 * r, growing r if needed.
+	 *
+	 * @param r
+	 *            coefficients to add to, or null
+	 * @param p
+	 *            coefficients to add
+	 * @param shift
+	 *            power of x to multiply p by
+	 * @return the sum
+	 */
+	private static double[] add(double[] r, double[] p, int shift)
+	{
+		if (r == null)
+		{
+			r = new double[p.length + shift];
+		}
+		else if (r.length < p.length + shift)
+		{
+			r = Arrays.copyOf(r, p.length + shift);
+		}
+		for (int i = 0; i < p.length; i++)
+		{
+			r[i + shift] += p[i];
+		}
+		return r;
+	}
+
+	/**
+	 * One independent group of constraints and the unknown cells they share.
+	 * Polynomials are indexed by number of mines and only meaningful up to a
+	 * constant factor.
+	 */
+	private static class Component
+	{
+		/**
+		 * Contents of the component: each constraint with its unknown cells
+		 * and the mines it needs
+		 */
+		private final String key;
+		/**
+		 * Index of each unknown cell, in counting order
+		 */
+		private final int[] cells;
+		/**
+		 * Mines each constraint needs
+		 */
+		private final int[] need;
+		/**
+		 * Cells of each constraint, as positions in <code>cells</code>
+		 */
+		private final int[][] members;
+		/**
+		 * Number of solutions with each number of mines
+		 */
+		private double[] total;
+		/**
+		 * For each cell, the number of solutions with a mine in it
+		 */
+		private double[][] mineWays;
+		/**
+		 * For each cell, the number of solutions, on the same scale as
+		 * <code>mineWays</code>
+		 */
+		private double[][] allWays;
+
+		// working data, only used while solving
+
+		/**
+		 * Constraints in progress before each cell is assigned, in the order
+		 * their values appear in a state
+		 */
+		private int[][] active;
+		/**
+		 * Constraints containing each cell
+		 */
+		private int[][] of;
+		/**
+		 * For each constraint containing each cell, how many of its cells come
+		 * after that one
+		 */
+		private int[][] left;
+		/**
+		 * Position of the first cell of each constraint
+		 */
+		private int[] first;
+		/**
+		 * Mines still needed by each constraint while taking a step
+		 */
+		private int[] value;
+
+		private Component(String key, int[] cells, int[] need, int[][] members)
+		{
+			this.key = key;
+			this.cells = cells;
+			this.need = need;
+			this.members = members;
+		}
+
+		/**
+		 * Counts the solutions of this component. Cells are assigned in order,
+		 * and a state records the mines still needed by every constraint that
+		 * has some cells assigned and some not. Partial assignments leading to
+		 * the same state are merged, both going forward from the first cell
+		 * and backward from the last, and each cell's counts combine the two
+		 * on either side of it.
+		 */
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private void solve()
+		{
+			prepare();
+			int m = cells.length;
+
+			HashMap<String, double[]>[] forward = new HashMap[m + 1];
+			forward[0] = new HashMap<String, double[]>();
+			forward[0].put("", new double[] { 1 });
+			for (int i = 0; i < m; i++)
+			{
+				forward[i + 1] = new HashMap<String, double[]>();
+				for (Map.Entry<String, double[]> e : forward[i].entrySet())
+				{
+					for (int mine = 0; mine <= 1; mine++)
+					{
+						String next = step(i, e.getKey(), mine);
+						if (next != null)
+						{
+							forward[i + 1].put(next, add(forward[i + 1].get(next), e.getValue(), mine));
+						}
+					}
+				}
+				normalize(forward[i + 1]);
+			}
+
+			HashMap<String, double[]>[] backward = new HashMap[m + 1];
+			backward[m] = new HashMap<String, double[]>();
+			backward[m].put("", new double[] { 1 });
+			for (int i = m - 1; i >= 0; i--)
+			{
+				backward[i] = new HashMap<String, double[]>();
+				for (String state : forward[i].keySet())
+				{
+					double[] r = null;
+					for (int mine = 0; mine <= 1; mine++)
+					{
+						String next = step(i, state, mine);
+						if (next != null && backward[i + 1].containsKey(next))
+						{
+							r = add(r, backward[i + 1].get(next), mine);
+						}
+					}
+					if (r != null)
+					{
+						backward[i].put(state, r);
+					}
+				}
+				normalize(backward[i]);
+			}
+
+			double[] t = forward[m].get("");
+			total = Arrays.copyOf(t != null ? t : new double[] { 0 }, m + 1);
+			mineWays = new double[m][];
+			allWays = new double[m][];
+			for (int i = 0; i < m; i++)
+			{
+				double[] mines = new double[m + 1];
+				double[] all = new double[m + 1];
+				for (Map.Entry<String, double[]> e : forward[i].entrySet())
+				{
+					for (int mine = 0; mine <= 1; mine++)
+					{
+						String next = step(i, e.getKey(), mine);
+						double[] after = next != null ? backward[i + 1].get(next) : null;
+						if (after != null)
+						{
+							double[] ways = product(e.getValue(), after);
+							add(all, ways, mine);
+							if (mine == 1)
+							{
+								add(mines, ways, mine);
+							}
+						}
+					}
+				}
+				mineWays[i] = mines;
+				allWays[i] = all;
+			}
+
+			active = null;
+			of = null;
+			left = null;
+			first = null;
+			value = null;
+		}
+
+		/**
+		 * Works out which constraints are in progress before each cell and
+		 * which constraints each cell belongs to.
+		 */
+		private void prepare()
+		{
+			int m = cells.length;
+			int n = need.length;
+			first = new int[n];
+			int[] last = new int[n];
+			int[] degree = new int[m];
+			for (int k = 0; k < n; k++)
+			{
+				first[k] = m;
+				for (int v : members[k])
+				{
+					first[k] = Math.min(first[k], v);
+					last[k] = Math.max(last[k], v);
+					degree[v]++;
+				}
+			}
+
+			of = new int[m][];
+			left = new int[m][];
+			for (int v = 0; v < m; v++)
+			{
+				of[v] = new int[degree[v]];
+				left[v] = new int[degree[v]];
+				degree[v] = 0;
+			}
+			for (int k = 0; k < n; k++)
+			{
+				for (int v : members[k])
+				{
+					int after = 0;
+					for (int u : members[k])
+					{
+						if (u > v)
+						{
+							after++;
+						}
+					}
+					of[v][degree[v]] = k;
+					left[v][degree[v]] = after;
+					degree[v]++;
+				}
+			}
+
+			active = new int[m + 1][];
+			active[0] = new int[0];
+			ArrayList<Integer> current = new ArrayList<Integer>();
+			for (int i = 0; i < m; i++)
+			{
+				ArrayList<Integer> next = new ArrayList<Integer>();
+				for (int k : current)
+				{
+					if (last[k] > i)
+					{
+						next.add(k);
+					}
+				}
+				for (int k : of[i])
+				{
+					if (first[k] == i && last[k] > i)
+					{
+						next.add(k);
+					}
+				}
+				active[i + 1] = new int[next.size()];
+				for (int p = 0; p < next.size(); p++)
+				{
+					active[i + 1][p] = next.get(p);
+				}
+				current = next;
+			}
+			value = new int[n];
+		}
+
+		/**
+		 * Assigns a cell and returns the resulting state, or null if the
+		 * assignment leaves some constraint unsatisfiable.
+		 *
+		 * @param i
+		 *            position of the cell
+		 * @param state
+		 *            mines needed by the constraints in progress before it
+		 * @param mine
+		 *            1 to make the cell a mine, 0 to make it safe
+		 * @return state after the cell, or null
+		 */
+		private String step(int i, String state, int mine)
+		{
+			int[] before = active[i];
+			for (int p = 0; p < before.length; p++)
+			{
+				value[before[p]] = state.charAt(p);
+			}
+			for (int j = 0; j < of[i].length; j++)
+			{
+				int k = of[i][j];
+				if (first[k] == i)
+				{
+					value[k] = need[k];
+				}
+				value[k] -= mine;
+				if (value[k] < 0 || value[k] > left[i][j])
+				{
+					return null;
+				}
+			}
+
+			int[] after = active[i + 1];
+			char[] next = new char[after.length];
+			for (int p = 0; p < after.length; p++)
+			{
+				next[p] = (char) value[after[p]];
+			}
+			return new String(next);
+		}
+
+		/**
+		 * Scales every polynomial of a level by the same factor, so the
+		 * largest coefficient among them is 1.
+		 *
+		 * @param level
+		 *            polynomials by state
+		 */
+		private static void normalize(HashMap<String, double[]> level)
+		{
+			double max = 0;
+			for (double[] p : level.values())
+			{
+				for (double x : p)
+				{
+					max = Math.max(max, x);
+				}
+			}
+			if (max > 0)
+			{
+				for (double[] p : level.values())
+				{
+					for (int i = 0; i < p.length; i++)
+					{
+						p[i] /= max;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Task that solves a range of components, splitting it in half until a
+	 * single component is left.
+	 */
+	private static class SolveTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final ArrayList<Component> components;
+		private final int from;
+		private final int to;
+
+		SolveTask(ArrayList<Component> components, int from, int to)
+		{
+			this.components = components;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from == 1)
+			{
+				components.get(from).solve();
+			}
+			else
+			{
+				int mid = (from + to) >>> 1;
+				invokeAll(new SolveTask(components, from, mid), new SolveTask(components, mid, to));
+			}
+		}
+	}
+}
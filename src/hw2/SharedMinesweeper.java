@@ -0,0 +1,611 @@
+package hw2;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import api.Cell;
+import api.CellRegion;
+import api.Mark;
+import api.RegionObserver;
+
+/**
+ * A minesweeper game that several players may play on at once, each from a
+ * thread of its own. <code>play</code> and <code>toggleMark</code> may be
+ * called from any number of threads without any outside locking.
+ * <p>
+ * Locking is striped by bands of <code>STRIPE_ROWS</code> rows: a cell is
+ * only changed while holding the lock of its band, and only for as long as
+ * it takes to change that one cell, so no thread ever holds two band locks
+ * and a flood fill crossing from one band into another needs no lock
+ * ordering. Of any number of players reaching a hidden cell at once, exactly
+ * one reveals it. A flood fill only continues from the cells it revealed
+ * itself, so fills started by different players in the same region share the
+ * work between them instead of repeating it, and together reveal exactly the
+ * cells one fill would have. Players in different parts of the board take
+ * different locks, and only wait for each other to add their moves to the
+ * log.
+ * <p>
+ * Each move collects its revealed cells locally and then appends them to the
+ * move log in one step, under the log's lock, so the log holds every revealed
+ * cell exactly once, with the cells of each move together and the moves in
+ * one order agreed on by all players. Within a move, a flood fill reveals the
+ * same cells as <code>GridUtil.clearRegion</code>, but not in the same order.
+ * <p>
+ * The first click never hits a mine, as in <code>Minesweeper</code>. Until the
+ * first click has moved its mine, if it needs to, other clicks wait for it;
+ * after that no click takes a lock until it is added to the log.
+ * <p>
+ * The game is lost once any player reveals a mine, at which point every mine
+ * is revealed, and won once every non-mine cell is revealed and no mine is,
+ * at which point every mine is flagged. Clicks that started before the game
+ * ended still complete.
+ */
+public class SharedMinesweeper
+{
+	/**
+	 * Number of rows in a band sharing one lock
+	 */
+	private static final int STRIPE_ROWS = 16;
+	/**
+	 * Largest number of locks; bands beyond this share them
+	 */
+	private static final int MAX_STRIPES = 256;
+
+	/**
+	 * Board of the game, only changed one cell at a time under the lock of
+	 * the cell's band
+	 */
+	private final Grid grid;
+	/**
+	 * Lock of each band of rows, with band b using lock b % locks.length
+	 */
+	private final Object[] locks;
+	/**
+	 * Random number generator used to move a mine from under the first click,
+	 * or null to use the first free cell
+	 */
+	private final Random ran;
+	/**
+	 * Number of mines
+	 */
+	private volatile int mines;
+	/**
+	 * Whether the first click has been processed, after which the mines never
+	 * move
+	 */
+	private volatile boolean started;
+	/**
+	 * Lock held while the first click is processed
+	 */
+	private final Object startLock = new Object();
+	/**
+	 * Number of non-mine cells still hidden
+	 */
+	private final AtomicInteger hiddenSafe;
+	/**
+	 * Number of cells with each mark value, indexed by ordinal
+	 */
+	private final LongAdder[] markCounts;
+	/**
+	 * Whether a mine has been revealed
+	 */
+	private volatile boolean exploded;
+	/**
+	 * Whether the game is over
+	 */
+	private volatile boolean over;
+	/**
+	 * Revealed cells grouped by move, guarded by itself
+	 */
+	private final MoveLog log;
+	/**
+	 * Observer notified of the cells changed by each move, or null
+	 */
+	private volatile RegionObserver regionObserver;
+
+	/**
+	 * Constructs a game from a given array of strings, in the format taken by
+	 * <code>Minesweeper</code>.
+	 *
+	 * @param descriptor
+	 *            array of strings representing mine positions
+	 */
+	public SharedMinesweeper(String[] descriptor)
+	{
+		this(new Minesweeper(descriptor), null);
+	}
+
+	/**
+	 * Constructs a game of the given size and number of mines, placed as by
+	 * <code>Minesweeper</code>.
+	 *
+	 * @param rows
+	 *            number of rows in the grid
+	 * @param columns
+	 *            number of columns in the grid
+	 * @param numberOfMines
+	 *            number of mines in the grid
+	 * @param givenRandom
+	 *            random number generator to use for placing mines
+	 * @throws IllegalArgumentException
+	 *             if the number of mines is negative or greater than the number
+	 *             of cells
+	 */
+	public SharedMinesweeper(int rows, int columns, int numberOfMines, Random givenRandom)
+	{
+		this(new Minesweeper(rows, columns, numberOfMines, givenRandom), givenRandom);
+	}
+
+	/**
+	 * Takes over the board of a new game, which must not be used again.
+	 *
+	 * @param game
+	 *            game with no clicks
+	 * @param givenRandom
+	 *            random number generator used to move a mine from under the
+	 *            first click, or null
+	 */
+	private SharedMinesweeper(Minesweeper game, Random givenRandom)
+	{
+		grid = game.getGrid();
+		locks = new Object[Math.min(MAX_STRIPES, (grid.getRows() + STRIPE_ROWS - 1) / STRIPE_ROWS)];
+		for (int i = 0; i < locks.length; i++)
+		{
+			locks[i] = new Object();
+		}
+		ran = givenRandom;
+		mines = game.getNumMines();
+		hiddenSafe = new AtomicInteger(grid.getHiddenSafeCount());
+		markCounts = new LongAdder[Mark.values().length];
+		for (Mark mark : Mark.values())
+		{
+			markCounts[mark.ordinal()] = new LongAdder();
+			markCounts[mark.ordinal()].add(grid.getMarkCount(mark));
+		}
+		log = new MoveLog(grid);
+	}
+
+	/**
+	 * Returns the number of rows in the grid.
+	 *
+	 * @return number of rows
+	 */
+	public int getRows()
+	{
+		return grid.getRows();
+	}
+
+	/**
+	 * Returns the number of columns in the grid.
+	 *
+	 * @return number of columns
+	 */
+	public int getColumns()
+	{
+		return grid.getColumns();
+	}
+
+	/**
+	 * Returns the number of mines.
+	 *
+	 * @return number of mines
+	 */
+	public int getNumMines()
+	{
+		return mines;
+	}
+
+	/**
+	 * Returns the number of cells marked with a flag.
+	 *
+	 * @return number of flags
+	 */
+	public int getNumFlags()
+	{
+		return markCounts[Mark.FLAG.ordinal()].intValue();
+	}
+
+	/**
+	 * Returns the number of cells marked with a question mark.
+	 *
+	 * @return number of question marks
+	 */
+	public int getNumQuestionMarks()
+	{
+		return markCounts[Mark.QUESTION_MARK.ordinal()].intValue();
+	}
+
+	/**
+	 * Returns the number of clicks that revealed at least one cell. Clicks on
+	 * cells already revealed, by any player, are not counted.
+	 *
+	 * @return number of clicks
+	 */
+	public int getClicks()
+	{
+		synchronized (log)
+		{
+			return log.getMoveCount();
+		}
+	}
+
+	/**
+	 * Returns a view of the cell at the given position. The view always shows
+	 * the current state of the cell, but must not be used to change it.
+	 *
+	 * @param row
+	 *            given position row
+	 * @param col
+	 *            given position column
+	 * @return cell at the given position
+	 */
+	public Cell getCell(int row, int col)
+	{
+		return grid.getCell(grid.index(row, col));
+	}
+
+	/**
+	 * Returns the log of all revealed cells, grouped by move in the order the
+	 * moves were added. The log is appended to while the game is played, so
+	 * readers must hold its lock, as in <code>synchronized (log)</code>.
+	 *
+	 * @return log of revealed cells
+	 */
+	public MoveLog getMoveLog()
+	{
+		return log;
+	}
+
+	/**
+	 * Returns whether the game is over, won or lost.
+	 *
+	 * @return true if the game is over, false otherwise
+	 */
+	public boolean isOver()
+	{
+		return over;
+	}
+
+	/**
+	 * Returns whether the game has been won, that is, every non-mine cell is
+	 * revealed and no mine is.
+	 *
+	 * @return true if the game is won, false otherwise
+	 */
+	public boolean isWon()
+	{
+		return !exploded && hiddenSafe.get() == 0;
+	}
+
+	/**
+	 * Sets an observer to be notified of the cells changed by each click and
+	 * each mark toggled. The observer is called from the thread of the player
+	 * who made the change, possibly from several threads at once.
+	 *
+	 * @param observer
+	 *            observer to be notified, or null for none
+	 */
+	public void setRegionObserver(RegionObserver observer)
+	{
+		regionObserver = observer;
+	}
+
+	/**
+	 * Moves the mark value on the cell at the given position to the next one,
+	 * in the order <code>Mark.NONE</code>, <code>Mark.FLAG</code>,
+	 * <code>Mark.QUESTION_MARK</code>.
+	 *
+	 * @param row
+	 *            given position row
+	 * @param col
+	 *            given position column
+	 */
+	public void toggleMark(int row, int col)
+	{
+		int c = grid.index(row, col);
+		Mark old;
+		synchronized (lockFor(c))
+		{
+			old = grid.cycleMark(c);
+		}
+		markCounts[old.ordinal()].decrement();
+		markCounts[(old.ordinal() + 1) % markCounts.length].increment();
+		fireChanges(new int[] { c }, 1);
+	}
+
+	/**
+	 * Reveals the cell at the given position, and if it has count zero, the
+	 * region around it, as <code>Minesweeper.play</code> does. This does
+	 * nothing if the game is over or the cell is already revealed.
+	 *
+	 * @param row
+	 *            given position row
+	 * @param col
+	 *            given position column
+	 */
+	public void play(int row, int col)
+	{
+		if (over)
+		{
+			return;
+		}
+		int c = grid.index(row, col);
+		if (!started)
+		{
+			start(c);
+		}
+		if (!reveal(c))
+		{
+			return;
+		}
+
+		int[] revealed = new int[16];
+		int n = 0;
+		revealed[n++] = c;
+		boolean mine = grid.isMine(c);
+		if (!mine && grid.getCount(c) == 0)
+		{
+			// depth-first fill from the zero cells this move revealed; the
+			// neighbors of a zero cell are never mines, and as in clearRegion
+			// the fill spreads to zero cells only up, down, left and right
+			int cols = grid.getColumns();
+			int[] stack = new int[16];
+			int top = 0;
+			stack[top++] = c;
+			while (top > 0)
+			{
+				int z = stack[--top];
+				int r = z / cols;
+				int k = z % cols;
+				int upper = Math.max(0, r - 1);
+				int lower = Math.min(grid.getRows() - 1, r + 1);
+				int left = Math.max(0, k - 1);
+				int right = Math.min(cols - 1, k + 1);
+				for (int nr = upper; nr <= lower; nr++)
+				{
+					for (int nk = left; nk <= right; nk++)
+					{
+						int d = nr * cols + nk;
+						boolean zero = grid.getCount(d) == 0;
+						if (zero && nr != r && nk != k)
+						{
+							continue;
+						}
+						if (grid.isHidden(d) && reveal(d))
+						{
+							if (n == revealed.length)
+							{
+								revealed = Arrays.copyOf(revealed, n * 2);
+							}
+							revealed[n++] = d;
+							if (zero)
+							{
+								if (top == stack.length)
+								{
+									stack = Arrays.copyOf(stack, top * 2);
+								}
+								stack[top++] = d;
+							}
+						}
+					}
+				}
+			}
+		}
+
+		synchronized (log)
+		{
+			log.beginMove();
+			for (int i = 0; i < n; i++)
+			{
+				log.add(revealed[i]);
+			}
+		}
+		// mines revealed or flagged at the end of the game are not part of
+		// the move, as in Minesweeper, but observers still see them
+		int changed = n;
+		if (mine)
+		{
+			exploded = true;
+			over = true;
+			for (int i = 0; i < grid.size(); i++)
+			{
+				if (grid.isMine(i) && reveal(i))
+				{
+					if (changed == revealed.length)
+					{
+						revealed = Arrays.copyOf(revealed, changed * 2);
+					}
+					revealed[changed++] = i;
+				}
+			}
+		}
+		else if (hiddenSafe.addAndGet(-n) == 0 && !exploded)
+		{
+			for (int i = 0; i < grid.size(); i++)
+			{
+				if (grid.isMine(i))
+				{
+					Mark old;
+					synchronized (lockFor(i))
+					{
+						old = grid.replaceMark(i, Mark.FLAG);
+					}
+					if (old != Mark.FLAG)
+					{
+						markCounts[old.ordinal()].decrement();
+						markCounts[Mark.FLAG.ordinal()].increment();
+						if (changed == revealed.length)
+						{
+							revealed = Arrays.copyOf(revealed, changed * 2);
+						}
+						revealed[changed++] = i;
+					}
+				}
+			}
+			over = true;
+		}
+		fireChanges(revealed, changed);
+	}
+
+	/**
+	 * Returns the lock of the band holding the cell with the given index.
+	 *
+	 * @param index
+	 *            index of a cell
+	 * @return lock covering the cell
+	 */
+	private Object lockFor(int index)
+	{
+		return locks[index / grid.getColumns() / STRIPE_ROWS % locks.length];
+	}
+
+	/**
+	 * Reveals the cell with the given index under the lock of its band,
+	 * unless it is already revealed.
+	 *
+	 * @param index
+	 *            index of a cell
+	 * @return true if this call revealed the cell
+	 */
+	private boolean reveal(int index)
+	{
+		synchronized (lockFor(index))
+		{
+			return grid.revealCell(index);
+		}
+	}
+
+	/**
+	 * Processes the first click, unless another thread already has, moving
+	 * the mine under it elsewhere if there is one. Other threads wait until
+	 * this is done.
+	 *
+	 * @param index
+	 *            index of the cell clicked
+	 */
+	private void start(int index)
+	{
+		synchronized (startLock)
+		{
+			if (started)
+			{
+				return;
+			}
+			if (grid.isMine(index))
+			{
+				relocateMine(index);
+			}
+			started = true;
+		}
+	}
+
+	/**
+	 * Moves the mine at the given index to another cell, chosen as by
+	 * <code>Minesweeper</code>, and updates the counts around both cells. If
+	 * every other cell is a mine, the mine is removed instead.
+	 *
+	 * @param index
+	 *            index of a mine
+	 */
+	private void relocateMine(int index)
+	{
+		int size = grid.size();
+		int t = ran != null ? ran.nextInt(size) : 0;
+		int target = -1;
+		for (int k = 0; k < size && target < 0; k++)
+		{
+			if (t != index && !grid.isMine(t))
+			{
+				target = t;
+			}
+			t = t + 1 == size ? 0 : t + 1;
+		}
+
+		synchronized (lockFor(index))
+		{
+			grid.setMineAndCount(index, false, 0);
+		}
+		updateCounts(index);
+		if (target >= 0)
+		{
+			synchronized (lockFor(target))
+			{
+				grid.setMineAndCount(target, true, -1);
+			}
+			updateCounts(target);
+		}
+		else
+		{
+			hiddenSafe.incrementAndGet();
+			mines--;
+		}
+	}
+
+	/**
+	 * Sets the counts of the cell with the given index and its neighbors from
+	 * the mines around them.
+	 *
+	 * @param index
+	 *            index of a cell
+	 */
+	private void updateCounts(int index)
+	{
+		int givenRow = grid.getRow(index);
+		int givenCol = grid.getCol(index);
+		for (int row = Math.max(0, givenRow - 1); row <= Math.min(grid.getRows() - 1, givenRow + 1); row++)
+		{
+			for (int col = Math.max(0, givenCol - 1); col <= Math.min(grid.getColumns() - 1, givenCol + 1); col++)
+			{
+				int c = grid.index(row, col);
+				boolean isMine = grid.isMine(c);
+				int count = isMine ? -1 : GridUtil.countNeighboringMines(grid, row, col);
+				synchronized (lockFor(c))
+				{
+					grid.setMineAndCount(c, isMine, count);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Notifies the region observer, if there is one, of the given changed
+	 * cells.
+	 *
+	 * @param cells
+	 *            indices of the changed cells
+	 * @param n
+	 *            number of changed cells
+	 */
+	private void fireChanges(int[] cells, int n)
+	{
+		RegionObserver observer = regionObserver;
+		if (observer == null)
+		{
+			return;
+		}
+		int cols = grid.getColumns();
+		int top = Integer.MAX_VALUE;
+		int left = Integer.MAX_VALUE;
+		int bottom = -1;
+		int right = -1;
+		for (int i = 0; i < n; i++)
+		{
+			int row = cells[i] / cols;
+			int col = cells[i] % cols;
+			top = Math.min(top, row);
+			bottom = Math.max(bottom, row);
+			left = Math.min(left, col);
+			right = Math.max(right, col);
+		}
+		int width = right - left + 1;
+		BitSet region = new BitSet(width * (bottom - top + 1));
+		for (int i = 0; i < n; i++)
+		{
+			region.set((cells[i] / cols - top) * width + cells[i] % cols - left);
+		}
+		observer.cellsChanged(new CellRegion(top, left, bottom, right, region));
+	}
+}
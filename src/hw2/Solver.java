@@ -0,0 +1,665 @@
+package hw2;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Deterministic solver for a minesweeper game. The solver looks only at what a
+ * player can see: which cells are revealed and the counts shown on them. From
+ * that it works out which hidden cells are certainly safe and which are
+ * certainly mines.
+ * <p>
+ * Every revealed cell is a constraint saying how many mines remain among its
+ * hidden neighbors that are not yet known. The unknown neighbors are kept as
+ * an 8-bit mask, one bit per neighbor position. Constraints are reduced with
+ * two rules. The single-point rule applies when a constraint needs no more
+ * mines (all its unknown cells are safe) or needs exactly as many mines as it
+ * has unknown cells (all of them are mines). The pairwise rule compares two
+ * constraints whose centers are at most two cells apart: if one needs exactly
+ * as many more mines than the other as it has cells the other does not share,
+ * those cells are mines and the other's unshared cells are safe. This also
+ * covers the case where one set of cells is a subset of the other.
+ * <p>
+ * The solver is incremental. Each call to <code>update</code> only looks at
+ * cells revealed since the previous call and re-examines the constraints
+ * around cells whose state changed, so the total work over a game is roughly
+ * linear in the number of cells.
+ * <p>
+ * Cells are identified by index, <code>row * columns + col</code>.
+ */
+public class Solver
+{
+	/**
+	 * Row offset of each neighbor position. Position i and 7 - i are
+	 * opposite each other.
+	 */
+	static final int[] DR = { -1, -1, -1, 0, 0, 1, 1, 1 };
+	/**
+	 * Column offset of each neighbor position.
+	 */
+	static final int[] DC = { -1, 0, 1, -1, 1, -1, 0, 1 };
+	/**
+	 * Width of the square frame used to line up the cells of two constraints.
+	 */
+	private static final int FRAME = 7;
+	/**
+	 * Flag for a revealed cell that has been taken into account.
+	 */
+	private static final int SEEN = 0x1;
+	/**
+	 * Flag for a constraint in the queue.
+	 */
+	private static final int QUEUED = 0x2;
+	/**
+	 * Flag for a constraint waiting to be compared with its neighbors.
+	 */
+	private static final int PAIRED = 0x4;
+	/**
+	 * Flag for a hidden cell known to be safe.
+	 */
+	private static final int SAFE = 0x8;
+	/**
+	 * Frame for every neighbor mask of a constraint at every offset of up to
+	 * two rows and columns, indexed by <code>(er + 2) * 5 + (ec + 2)</code>
+	 * and then by mask.
+	 */
+	private static final long[][] FRAMES = new long[25][256];
+
+	static
+	{
+		for (int er = -2; er <= 2; er++)
+		{
+			for (int ec = -2; ec <= 2; ec++)
+			{
+				for (int mask = 0; mask < 256; mask++)
+				{
+					long f = 0;
+					for (int i = 0; i < 8; i++)
+					{
+						if ((mask & (1 << i)) != 0)
+						{
+							f |= 1L << ((er + DR[i] + 3) * FRAME + (ec + DC[i] + 3));
+						}
+					}
+					FRAMES[(er + 2) * 5 + (ec + 2)][mask] = f;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The game being solved
+	 */
+	private final Minesweeper game;
+	/**
+	 * Grid of the game, only read where a player could see it
+	 */
+	private final Grid grid;
+	/**
+	 * Number of rows in the grid
+	 */
+	private final int rows;
+	/**
+	 * Number of columns in the grid
+	 */
+	private final int cols;
+	/**
+	 * For each constraint, the neighbor positions that are still unknown
+	 */
+	private final byte[] unknown;
+	/**
+	 * For each constraint, the number of mines among its unknown cells
+	 */
+	private final byte[] need;
+	/**
+	 * Flags for each cell, kept in an array rather than in <code>BitSet</code>s
+	 * since clearing a bit of a sparse <code>BitSet</code> can scan all of it
+	 */
+	private final byte[] flags;
+	/**
+	 * Cells known to be mines
+	 */
+	private final BitSet mines;
+	/**
+	 * Cells that became known safe, most recent on top
+	 */
+	private int[] safeStack;
+	/**
+	 * Number of cells on the safe stack
+	 */
+	private int safeSize;
+	/**
+	 * Constraints waiting to be reduced
+	 */
+	private int[] queue;
+	/**
+	 * Number of constraints waiting to be reduced
+	 */
+	private int queueSize;
+	/**
+	 * Constraints the single-point rule could not settle, waiting to be
+	 * compared with their neighbors
+	 */
+	private int[] pairs;
+	/**
+	 * Number of constraints waiting to be compared
+	 */
+	private int pairSize;
+	/**
+	 * Constraints that had unknown cells when last looked at
+	 */
+	private int[] open;
+	/**
+	 * Number of entries in the open list
+	 */
+	private int openSize;
+	/**
+	 * Reader positioned at the first history entry not yet taken into account
+	 */
+	private final MoveLog.Reader scanned;
+
+	/**
+	 * Constructs a solver for the given game. Nothing is deduced until
+	 * <code>update</code> is called.
+	 *
+	 * @param givenGame
+	 *            game to solve
+	 */
+	public Solver(Minesweeper givenGame)
+	{
+		game = givenGame;
+		grid = givenGame.getGrid();
+		rows = grid.getRows();
+		cols = grid.getColumns();
+		unknown = new byte[grid.size()];
+		need = new byte[grid.size()];
+		flags = new byte[grid.size()];
+		mines = new BitSet();
+		safeStack = new int[16];
+		queue = new int[16];
+		pairs = new int[16];
+		open = new int[16];
+		scanned = givenGame.getMoveLog().reader();
+	}
+
+	/**
+	 * Takes into account every cell revealed since the last call, and reduces
+	 * the affected constraints until no more cells can be deduced.
+	 */
+	public void update()
+	{
+		// Every revealed cell with a positive count reaches the history. A
+		// revealed zero cell that still has a hidden neighbor always borders
+		// one of those, so looking around each new entry finds them too.
+		while (scanned.hasNext())
+		{
+			int h = scanned.next();
+			int r = grid.getRow(h);
+			int c = grid.getCol(h);
+			addRevealed(r, c);
+			for (int i = 0; i < 8; i++)
+			{
+				int rr = r + DR[i];
+				int cc = c + DC[i];
+				if (rr >= 0 && rr < rows && cc >= 0 && cc < cols)
+				{
+					addRevealed(rr, cc);
+				}
+			}
+		}
+		propagate();
+	}
+
+	/**
+	 * Returns the hidden cells known to be safe, as of the last call to
+	 * <code>update</code>. The set is built from the cells deduced safe and not
+	 * yet revealed, so it takes time proportional to their number.
+	 *
+	 * @return new set of cell indices
+	 */
+	public BitSet getSafeCells()
+	{
+		// drops cells revealed since, so the stack does not keep growing
+		BitSet safe = new BitSet();
+		int kept = 0;
+		for (int i = 0; i < safeSize; i++)
+		{
+			int x = safeStack[i];
+			if (grid.isHidden(x))
+			{
+				safe.set(x);
+				safeStack[kept++] = x;
+			}
+		}
+		safeSize = kept;
+		return safe;
+	}
+
+	/**
+	 * Returns the cells known to be mines. The set reflects the state as of
+	 * the last call to <code>update</code>.
+	 * <p>
+	 * NOTE: The caller of this method should normally not modify the returned
+	 * set.
+	 *
+	 * @return set of cell indices
+	 */
+	public BitSet getMines()
+	{
+		return mines;
+	}
+
+	/**
+	 * Returns a hidden cell known to be safe, preferring the most recently
+	 * deduced one, or -1 if there is none.
+	 *
+	 * @return index of a safe cell, or -1
+	 */
+	public int nextSafeCell()
+	{
+		while (safeSize > 0)
+		{
+			int x = safeStack[safeSize - 1];
+			if (grid.isHidden(x))
+			{
+				return x;
+			}
+			safeSize--;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the revealed cells that still have unknown neighbors after
+	 * everything the solver could deduce. These are the constraints left for
+	 * other classes of the package, such as the probability solver, to work
+	 * on.
+	 *
+	 * @return indices of the open constraints
+	 */
+	int[] getOpenConstraints()
+	{
+		int kept = 0;
+		for (int i = 0; i < openSize; i++)
+		{
+			if (unknown[open[i]] != 0)
+			{
+				open[kept++] = open[i];
+			}
+		}
+		openSize = kept;
+		return Arrays.copyOf(open, openSize);
+	}
+
+	/**
+	 * Returns the neighbor positions of a constraint that are still unknown.
+	 * Bit i stands for the neighbor at offset (DR[i], DC[i]).
+	 *
+	 * @param x
+	 *            index of a revealed cell
+	 * @return mask of unknown neighbors, 0 if there are none
+	 */
+	int getUnknownCells(int x)
+	{
+		return (flags[x] & SEEN) != 0 ? unknown[x] & 0xFF : 0;
+	}
+
+	/**
+	 * Returns the number of mines a constraint still needs among its unknown
+	 * neighbors.
+	 *
+	 * @param x
+	 *            index of a revealed cell
+	 * @return number of mines needed
+	 */
+	int getMinesNeeded(int x)
+	{
+		return need[x];
+	}
+
+	/**
+	 * Takes into account the cell at the given position if it is revealed and
+	 * has not been seen before. It stops being unknown to its neighbors, and
+	 * unless it is a mine it becomes a new constraint.
+	 *
+	 * @param r
+	 *            row of the cell
+	 * @param c
+	 *            column of the cell
+	 */
+	private void addRevealed(int r, int c)
+	{
+		int x = grid.index(r, c);
+		if ((flags[x] & SEEN) != 0 || grid.isHidden(x))
+		{
+			return;
+		}
+		flags[x] = (byte) ((flags[x] | SEEN) & ~SAFE);
+
+		if (grid.isMine(x))
+		{
+			// only visible once the game is lost
+			setMine(x);
+			return;
+		}
+		forgetNeighbor(x, false);
+
+		int mask = 0;
+		int k = grid.getCount(x);
+		for (int i = 0; i < 8; i++)
+		{
+			int rr = r + DR[i];
+			int cc = c + DC[i];
+			if (rr >= 0 && rr < rows && cc >= 0 && cc < cols)
+			{
+				int n = grid.index(rr, cc);
+				if (grid.isHidden(n))
+				{
+					if (mines.get(n))
+					{
+						k--;
+					}
+					else if ((flags[n] & SAFE) == 0)
+					{
+						mask |= 1 << i;
+					}
+				}
+			}
+		}
+		unknown[x] = (byte) mask;
+		need[x] = (byte) k;
+		enqueue(x);
+		if (mask != 0)
+		{
+			if (openSize == open.length)
+			{
+				open = Arrays.copyOf(open, openSize * 2);
+			}
+			open[openSize++] = x;
+		}
+	}
+
+	/**
+	 * Records that the given hidden cell is safe.
+	 *
+	 * @param x
+	 *            index of the cell
+	 */
+	private void setSafe(int x)
+	{
+		if ((flags[x] & SAFE) != 0 || !grid.isHidden(x))
+		{
+			return;
+		}
+		flags[x] |= SAFE;
+		if (safeSize == safeStack.length)
+		{
+			safeStack = Arrays.copyOf(safeStack, safeSize * 2);
+		}
+		safeStack[safeSize++] = x;
+		forgetNeighbor(x, false);
+	}
+
+	/**
+	 * Records that the given cell is a mine.
+	 *
+	 * @param x
+	 *            index of the cell
+	 */
+	private void setMine(int x)
+	{
+		if (mines.get(x))
+		{
+			return;
+		}
+		mines.set(x);
+		forgetNeighbor(x, true);
+	}
+
+	/**
+	 * Removes the given cell from the unknown cells of every neighboring
+	 * constraint, and queues those constraints to be reduced again.
+	 *
+	 * @param x
+	 *            index of a cell that is now known
+	 * @param isMine
+	 *            true if the cell is known to be a mine
+	 */
+	private void forgetNeighbor(int x, boolean isMine)
+	{
+		int r = grid.getRow(x);
+		int c = grid.getCol(x);
+		for (int i = 0; i < 8; i++)
+		{
+			int rr = r + DR[i];
+			int cc = c + DC[i];
+			if (rr >= 0 && rr < rows && cc >= 0 && cc < cols)
+			{
+				int y = grid.index(rr, cc);
+				int bit = 1 << (7 - i);			// x as seen from y
+				if ((flags[y] & SEEN) != 0 && (unknown[y] & bit) != 0)
+				{
+					unknown[y] &= ~bit;
+					if (isMine)
+					{
+						need[y]--;
+					}
+					enqueue(y);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the given constraint to the queue unless it is already there.
+	 *
+	 * @param x
+	 *            index of the constraint
+	 */
+	private void enqueue(int x)
+	{
+		if ((flags[x] & QUEUED) != 0)
+		{
+			return;
+		}
+		flags[x] |= QUEUED;
+		if (queueSize == queue.length)
+		{
+			queue = Arrays.copyOf(queue, queueSize * 2);
+		}
+		queue[queueSize++] = x;
+	}
+
+	/**
+	 * Reduces queued constraints until no more cells can be deduced. The
+	 * cheap single-point rule is applied until it makes no more progress
+	 * before any constraint is compared with its neighbors, since most
+	 * constraints are settled by a neighbor's single-point deduction and never
+	 * need the pairwise rule. Any cell that becomes known queues its other
+	 * constraints again.
+	 */
+	private void propagate()
+	{
+		while (queueSize > 0 || pairSize > 0)
+		{
+			if (queueSize > 0)
+			{
+				int a = queue[--queueSize];
+				flags[a] &= ~QUEUED;
+				if (!reduceSingle(a) && (flags[a] & PAIRED) == 0)
+				{
+					flags[a] |= PAIRED;
+					if (pairSize == pairs.length)
+					{
+						pairs = Arrays.copyOf(pairs, pairSize * 2);
+					}
+					pairs[pairSize++] = a;
+				}
+			}
+			else
+			{
+				int a = pairs[--pairSize];
+				flags[a] &= ~PAIRED;
+				if (unknown[a] != 0 && reducePairs(a))
+				{
+					// the masks compared are out of date, so look at a again
+					enqueue(a);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Applies the single-point rule to a constraint.
+	 *
+	 * @param a
+	 *            index of the constraint
+	 * @return true if the constraint has no unknown cells left
+	 */
+	private boolean reduceSingle(int a)
+	{
+		int mask = unknown[a] & 0xFF;
+		if (mask == 0)
+		{
+			return true;
+		}
+		int k = need[a];
+		if (k == 0 || k == Integer.bitCount(mask))
+		{
+			apply(frame(mask, 0, 0), k != 0, grid.getRow(a), grid.getCol(a));
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Applies the pairwise rule to a constraint and every constraint whose
+	 * cells can overlap its own, stopping at the first deduction.
+	 *
+	 * @param a
+	 *            index of the constraint
+	 * @return true if any cell was deduced
+	 */
+	private boolean reducePairs(int a)
+	{
+		int r = grid.getRow(a);
+		int c = grid.getCol(a);
+		long fa = frame(unknown[a] & 0xFF, 0, 0);
+		int k = need[a];
+		for (int er = -2; er <= 2; er++)
+		{
+			for (int ec = -2; ec <= 2; ec++)
+			{
+				int rb = r + er;
+				int cb = c + ec;
+				if ((er != 0 || ec != 0) && rb >= 0 && rb < rows && cb >= 0 && cb < cols
+						&& reducePair(fa, k, grid.index(rb, cb), er, ec, r, c))
+				{
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Applies the pairwise rule to a constraint a and a nearby cell b, if b is
+	 * a constraint with unknown cells.
+	 *
+	 * @param fa
+	 *            unknown cells of a, as a frame centered on a
+	 * @param k
+	 *            number of mines a needs
+	 * @param b
+	 *            index of the other cell
+	 * @param er
+	 *            row of b relative to a
+	 * @param ec
+	 *            column of b relative to a
+	 * @param r
+	 *            row of a
+	 * @param c
+	 *            column of a
+	 * @return true if any cell was deduced
+	 */
+	private boolean reducePair(long fa, int k, int b, int er, int ec, int r, int c)
+	{
+		if ((flags[b] & SEEN) == 0 || unknown[b] == 0)
+		{
+			return false;
+		}
+
+		long fb = frame(unknown[b] & 0xFF, er, ec);
+		long onlyA = fa & ~fb;
+		long onlyB = fb & ~fa;
+		if (onlyA == 0 && onlyB == 0)
+		{
+			return false;
+		}
+
+		int kb = need[b];
+		if (kb - k == Long.bitCount(onlyB))
+		{
+			// b needs a mine in every cell a does not share, so the shared
+			// cells hold all of a's mines
+			apply(onlyB, true, r, c);
+			apply(onlyA, false, r, c);
+			return true;
+		}
+		if (k - kb == Long.bitCount(onlyA))
+		{
+			apply(onlyA, true, r, c);
+			apply(onlyB, false, r, c);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Converts a neighbor mask of a constraint into a frame of cells centered
+	 * on another cell. Bit <code>(dr + 3) * FRAME + (dc + 3)</code> of the
+	 * frame is the cell at offset (dr, dc) from the center.
+	 *
+	 * @param mask
+	 *            neighbor mask of the constraint
+	 * @param er
+	 *            row of the constraint relative to the center
+	 * @param ec
+	 *            column of the constraint relative to the center
+	 * @return frame of the cells in the mask
+	 */
+	private static long frame(int mask, int er, int ec)
+	{
+		return FRAMES[(er + 2) * 5 + (ec + 2)][mask];
+	}
+
+	/**
+	 * Records every cell of a frame as a mine or as safe.
+	 *
+	 * @param f
+	 *            frame of cells
+	 * @param isMine
+	 *            true to record the cells as mines, false as safe
+	 * @param r
+	 *            row of the center of the frame
+	 * @param c
+	 *            column of the center of the frame
+	 */
+	private void apply(long f, boolean isMine, int r, int c)
+	{
+		while (f != 0)
+		{
+			int p = Long.numberOfTrailingZeros(f);
+			f &= f - 1;
+			int x = grid.index(r + p / FRAME - 3, c + p % FRAME - 3);
+			if (isMine)
+			{
+				setMine(x);
+			}
+			else
+			{
+				setSafe(x);
+			}
+		}
+	}
+}
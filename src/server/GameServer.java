@@ -0,0 +1,577 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import hw2.Minesweeper;
+import server.SessionRegistry.Session;
+import util.LatencyHistogram;
+
+/**
+ * Hosts minesweeper games for clients connecting over TCP on the loopback
+ * interface. Each connection is served by a thread of its own, which reads
+ * one command per line and writes one response per command, so a client may
+ * also send several commands before reading their responses.
+ * <p>
+ * Commands, with rows and columns numbered from 0:
+ * <ul>
+ * <li><code>NEW rows cols mines [seed]</code> starts a game and answers
+ * <code>OK id</code>, or <code>ERR</code> if the game would have more than
+ * the most cells per game, or would take the games over the most cells in
+ * total</li>
+ * <li><code>PLAY id row col</code>, <code>MARK id row col</code> and
+ * <code>HINT id</code> call <code>play</code>, <code>toggleMark</code> and
+ * <code>hint</code>, and answer <code>OK</code> followed by the state</li>
+ * <li><code>STATE id</code> answers the state, and <code>GRID id</code>
+ * answers <code>OK rows</code> followed by one line per row, as written by
+ * <code>writeGrid</code>, without building the whole grid in memory</li>
+ * <li><code>CLOSE id</code> ends a game, and <code>QUIT</code> closes the
+ * connection</li>
+ * </ul>
+ * The state is <code>playing</code>, <code>won</code> or <code>lost</code>,
+ * then the number of clicks and the number of flags. Errors are answered with
+ * <code>ERR</code> and a message, and the connection stays open.
+ * <p>
+ * Connections run on virtual threads when the runtime has them (Java 21 and
+ * later) and on a cached pool of platform threads otherwise. Games unused for
+ * longer than the idle timeout are evicted. While the server runs, it
+ * prints the number of sessions, the requests per second since the last
+ * report, and percentiles of the time taken by each request, measured from
+ * reading the command to writing the response.
+ * <p>
+ * Usage:
+ * <code>GameServer [port] [idleSeconds] [maxCellsPerGame] [maxCellsTotal]</code>
+ */
+public class GameServer
+{
+	/**
+	 * Default for the most cells a game may have
+	 */
+	public static final int DEFAULT_MAX_CELLS = 1 << 24;
+	/**
+	 * Default for the most cells all the games may have together
+	 */
+	public static final long DEFAULT_MAX_TOTAL_CELLS = 1L << 26;
+
+	/**
+	 * Socket accepting connections
+	 */
+	private final ServerSocket serverSocket;
+	/**
+	 * Hosted games
+	 */
+	private final SessionRegistry registry;
+	/**
+	 * Most cells a game may have
+	 */
+	private final int maxCells;
+	/**
+	 * Runs the connections
+	 */
+	private final ExecutorService connections;
+	/**
+	 * Sockets of the open connections
+	 */
+	private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+	/**
+	 * Runs eviction of idle sessions and reports
+	 */
+	private final ScheduledExecutorService timer;
+	/**
+	 * Number of requests served
+	 */
+	private final LongAdder requests = new LongAdder();
+	/**
+	 * Times of the requests served, spread over one histogram per processor
+	 * so that connections rarely wait for each other to record a request.
+	 * Each histogram is guarded by itself.
+	 */
+	private final LatencyHistogram[] times;
+	/**
+	 * Index in <code>times</code> of the histogram of the next connection
+	 */
+	private final AtomicInteger nextStripe = new AtomicInteger();
+
+	/**
+	 * Entry point.
+	 *
+	 * @param args
+	 *            optionally the port, 0 or absent for any free port, the idle
+	 *            timeout in seconds, the most cells per game and the most
+	 *            cells of all games together
+	 * @throws IOException
+	 *             if the server socket cannot be opened
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+		long idleSeconds = args.length > 1 ? Long.parseLong(args[1]) : 600;
+		int maxCells = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MAX_CELLS;
+		long maxTotalCells = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_MAX_TOTAL_CELLS;
+		GameServer server = new GameServer(port, idleSeconds * 1000, maxCells, maxTotalCells);
+		System.out.println("Listening on port " + server.getPort());
+		server.report(System.out, 1000);
+		server.serve();
+	}
+
+	/**
+	 * Opens a server on the given port of the loopback interface, with the
+	 * default limits on the number of cells. Nothing is accepted until
+	 * <code>serve</code> or <code>start</code> is called.
+	 *
+	 * @param port
+	 *            port to listen on, or 0 for any free port
+	 * @param idleMillis
+	 *            milliseconds a game may go unused before it is evicted
+	 * @throws IOException
+	 *             if the server socket cannot be opened
+	 */
+	public GameServer(int port, long idleMillis) throws IOException
+	{
+		this(port, idleMillis, DEFAULT_MAX_CELLS, DEFAULT_MAX_TOTAL_CELLS);
+	}
+
+	/**
+	 * Opens a server on the given port of the loopback interface. Nothing is
+	 * accepted until <code>serve</code> or <code>start</code> is called.
+	 *
+	 * @param port
+	 *            port to listen on, or 0 for any free port
+	 * @param idleMillis
+	 *            milliseconds a game may go unused before it is evicted
+	 * @param maxCells
+	 *            most cells a game may have
+	 * @param maxTotalCells
+	 *            most cells all the games may have together
+	 * @throws IOException
+	 *             if the server socket cannot be opened
+	 */
+	public GameServer(int port, long idleMillis, int maxCells, long maxTotalCells) throws IOException
+	{
+		serverSocket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+		registry = new SessionRegistry(idleMillis, maxTotalCells);
+		this.maxCells = maxCells;
+		times = new LatencyHistogram[Runtime.getRuntime().availableProcessors()];
+		for (int i = 0; i < times.length; i++)
+		{
+			times[i] = new LatencyHistogram();
+		}
+		connections = newConnectionExecutor();
+		timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "server-timer");
+			t.setDaemon(true);
+			return t;
+		});
+		long period = Math.max(1, idleMillis / 4);
+		timer.scheduleAtFixedRate(registry::evictIdle, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Returns the port the server listens on.
+	 *
+	 * @return port
+	 */
+	public int getPort()
+	{
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Returns the hosted games.
+	 *
+	 * @return registry of the games
+	 */
+	public SessionRegistry getRegistry()
+	{
+		return registry;
+	}
+
+	/**
+	 * Prints a line of statistics at the given interval until the server is
+	 * closed.
+	 *
+	 * @param out
+	 *            stream to print to
+	 * @param reportMillis
+	 *            milliseconds between lines
+	 */
+	public void report(PrintStream out, long reportMillis)
+	{
+		long[] last = { System.nanoTime(), 0 };
+		timer.scheduleAtFixedRate(() -> {
+			long now = System.nanoTime();
+			long count = requests.sum();
+			out.println(format(snapshot(), registry.size(), count - last[1], now - last[0]));
+			last[0] = now;
+			last[1] = count;
+		}, reportMillis, reportMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Accepts connections on a new daemon thread and returns immediately.
+	 */
+	public void start()
+	{
+		Thread t = new Thread(() -> {
+			try
+			{
+				serve();
+			}
+			catch (IOException e)
+			{
+				// the socket was closed
+			}
+		}, "server-accept");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * Accepts connections until the server is closed.
+	 *
+	 * @throws IOException
+	 *             if accepting fails for a reason other than the server being
+	 *             closed
+	 */
+	public void serve() throws IOException
+	{
+		while (!serverSocket.isClosed())
+		{
+			Socket socket;
+			try
+			{
+				socket = serverSocket.accept();
+			}
+			catch (IOException e)
+			{
+				if (serverSocket.isClosed())
+				{
+					return;
+				}
+				throw e;
+			}
+			sockets.add(socket);
+			try
+			{
+				connections.execute(() -> handle(socket));
+			}
+			catch (RejectedExecutionException e)
+			{
+				// the server was closed after the connection was accepted
+				sockets.remove(socket);
+				socket.close();
+			}
+		}
+	}
+
+	/**
+	 * Stops accepting connections, closes the open ones and stops evicting
+	 * and reporting.
+	 *
+	 * @throws IOException
+	 *             if the server socket cannot be closed
+	 */
+	public void close() throws IOException
+	{
+		timer.shutdownNow();
+		serverSocket.close();
+		connections.shutdownNow();
+		// reads from sockets are not interrupted, so close them instead
+		for (Socket socket : sockets)
+		{
+			socket.close();
+		}
+	}
+
+	/**
+	 * Returns the times of all the requests served so far, merged into one
+	 * histogram.
+	 *
+	 * @return request times
+	 */
+	public LatencyHistogram snapshot()
+	{
+		LatencyHistogram copy = new LatencyHistogram();
+		for (LatencyHistogram stripe : times)
+		{
+			synchronized (stripe)
+			{
+				copy.add(stripe);
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Returns the number of requests served so far.
+	 *
+	 * @return number of requests
+	 */
+	public long getRequests()
+	{
+		return requests.sum();
+	}
+
+	/**
+	 * Returns one line describing the given request times.
+	 *
+	 * @param stats
+	 *            request times so far
+	 * @param sessions
+	 *            number of hosted games
+	 * @param requests
+	 *            number of requests over the interval
+	 * @param elapsed
+	 *            length of the interval in nanoseconds
+	 * @return description of the requests
+	 */
+	public static String format(LatencyHistogram stats, int sessions, long requests, long elapsed)
+	{
+		return String.format("%d sessions, %d requests, %.0f requests/s, "
+				+ "p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms",
+				sessions, stats.getCount(), requests / (elapsed / 1e9), stats.getPercentile(0.5) / 1e6,
+				stats.getPercentile(0.99) / 1e6, stats.getPercentile(0.999) / 1e6, stats.getMax() / 1e6);
+	}
+
+	/**
+	 * Returns an executor running each task on a new virtual thread if the
+	 * runtime has them, or on a cached pool of daemon threads otherwise.
+	 * Virtual threads are found by reflection, so the server also builds and
+	 * runs on older runtimes.
+	 */
+	private static ExecutorService newConnectionExecutor()
+	{
+		try
+		{
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			return Executors.newCachedThreadPool(r -> {
+				Thread t = new Thread(r, "server-connection");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+	}
+
+	/**
+	 * Serves one connection until the client quits or disconnects. Responses
+	 * are flushed only when no further command is waiting, so pipelined
+	 * commands are answered in one write. Each request is counted and timed as
+	 * soon as it is answered.
+	 */
+	private void handle(Socket socket)
+	{
+		LatencyHistogram stripe = times[Math.floorMod(nextStripe.getAndIncrement(), times.length)];
+		try (Socket s = socket;
+				BufferedReader in = new BufferedReader(
+						new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+				Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.US_ASCII)))
+		{
+			s.setTcpNoDelay(true);
+			String line;
+			while ((line = in.readLine()) != null)
+			{
+				long t = System.nanoTime();
+				String[] words = line.trim().split("\\s+");
+				if (words[0].equalsIgnoreCase("QUIT"))
+				{
+					break;
+				}
+				try
+				{
+					execute(words, out);
+				}
+				catch (IllegalArgumentException e)
+				{
+					// commands check their arguments before writing anything
+					out.write("ERR " + e.getMessage() + "\n");
+				}
+				long elapsed = System.nanoTime() - t;
+				requests.increment();
+				synchronized (stripe)
+				{
+					stripe.record(elapsed);
+				}
+				if (!in.ready())
+				{
+					out.flush();
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			// the client disconnected or the server was closed
+		}
+		finally
+		{
+			sockets.remove(socket);
+		}
+	}
+
+	/**
+	 * Executes one command and writes the response.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the command is not valid or there is no room for a new
+	 *             game, in which case nothing has been written
+	 * @throws IOException
+	 *             if the response cannot be written
+	 */
+	private void execute(String[] words, Writer out) throws IOException
+	{
+		String command = words[0].toUpperCase();
+		if (command.equals("NEW"))
+		{
+			checkArguments(words, 4, 5);
+			int rows = parse(words[1]);
+			int cols = parse(words[2]);
+			int mines = parse(words[3]);
+			Random random = words.length > 4 ? new Random(Long.parseLong(words[4])) : new Random();
+			long cells = (long) rows * cols;
+			if (rows <= 0 || cols <= 0)
+			{
+				throw new IllegalArgumentException("invalid size " + rows + "x" + cols);
+			}
+			if (cells > maxCells)
+			{
+				throw new IllegalArgumentException("too many cells " + rows + "x" + cols + ", at most " + maxCells);
+			}
+			Session session = registry.create(cells, () -> new Minesweeper(rows, cols, mines, random));
+			if (session == null)
+			{
+				throw new IllegalArgumentException("server full");
+			}
+			out.write("OK " + session.getId() + "\n");
+			return;
+		}
+		if (command.equals("CLOSE"))
+		{
+			checkArguments(words, 2, 2);
+			if (!registry.remove(parseId(words[1])))
+			{
+				throw new IllegalArgumentException("no game " + words[1]);
+			}
+			out.write("OK\n");
+			return;
+		}
+
+		int arguments = command.equals("PLAY") || command.equals("MARK") ? 4 : 2;
+		if (arguments == 2 && !command.equals("HINT") && !command.equals("STATE") && !command.equals("GRID"))
+		{
+			throw new IllegalArgumentException("unknown command " + words[0]);
+		}
+		checkArguments(words, arguments, arguments);
+		Session session = registry.get(parseId(words[1]));
+		if (session == null)
+		{
+			throw new IllegalArgumentException("no game " + words[1]);
+		}
+		synchronized (session)
+		{
+			if (session.isClosed())
+			{
+				throw new IllegalArgumentException("no game " + words[1]);
+			}
+			Minesweeper game = session.getGame();
+			if (arguments == 4)
+			{
+				int row = parse(words[2]);
+				int col = parse(words[3]);
+				if (row < 0 || row >= game.getRows() || col < 0 || col >= game.getColumns())
+				{
+					throw new IllegalArgumentException("no cell " + row + " " + col);
+				}
+				if (command.equals("PLAY"))
+				{
+					game.play(row, col);
+				}
+				else
+				{
+					game.toggleMark(row, col);
+				}
+			}
+			else if (command.equals("HINT"))
+			{
+				game.hint();
+			}
+			else if (command.equals("GRID"))
+			{
+				// streamed row by row, each row ending with a newline
+				out.write("OK " + game.getRows() + "\n");
+				game.writeGrid(out, false);
+				return;
+			}
+			String state = game.isWon() ? "won" : game.isOver() ? "lost" : "playing";
+			out.write("OK " + state + " " + game.getClicks() + " " + game.getNumFlags() + "\n");
+		}
+	}
+
+	/**
+	 * Checks that a command has between the given numbers of words, including
+	 * the command itself.
+	 */
+	private static void checkArguments(String[] words, int min, int max)
+	{
+		if (words.length < min || words.length > max)
+		{
+			throw new IllegalArgumentException("wrong number of arguments for " + words[0]);
+		}
+	}
+
+	/**
+	 * Parses an argument as a game id.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the argument is not a number
+	 */
+	private static long parseId(String word)
+	{
+		try
+		{
+			return Long.parseLong(word);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException("not a number: " + word);
+		}
+	}
+
+	/**
+	 * Parses an argument as an int.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the argument is not a number
+	 */
+	private static int parse(String word)
+	{
+		try
+		{
+			return Integer.parseInt(word);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException("not a number: " + word);
+		}
+	}
+}
@@ -0,0 +1,281 @@
+package server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import hw2.Minesweeper;
+
+/**
+ * Games hosted by a <code>GameServer</code>, each under a numeric id. Any
+ * number of threads may create, look up and remove sessions at once; the
+ * sessions are kept in a <code>ConcurrentHashMap</code>, so lookups take no
+ * lock.
+ * <p>
+ * A <code>Minesweeper</code> is not thread-safe, so each session is also its
+ * own lock: callers hold it while they use the game. A session not used for
+ * longer than the idle timeout is removed by <code>evictIdle</code>, which
+ * marks it closed under its lock, so a caller that looked the session up just
+ * before it was evicted sees that it is closed instead of playing a game
+ * nobody can reach any more.
+ * <p>
+ * The registry may be given a limit on the total number of cells of its
+ * games. The cells of a game are reserved before the game is built, so a game
+ * that would go over the limit is refused without allocating it.
+ */
+public class SessionRegistry
+{
+	/**
+	 * Sessions by id
+	 */
+	private final ConcurrentHashMap<Long, Session> sessions = new ConcurrentHashMap<>();
+	/**
+	 * Id of the next session created
+	 */
+	private final AtomicLong nextId = new AtomicLong(1);
+	/**
+	 * Nanoseconds a session may go unused before it is evicted
+	 */
+	private final long idleNanos;
+	/**
+	 * Most cells the games may have in total
+	 */
+	private final long maxCells;
+	/**
+	 * Cells of the games of open sessions, and of games being built
+	 */
+	private final AtomicLong cells = new AtomicLong();
+
+	/**
+	 * Constructs an empty registry with no limit on the number of cells.
+	 *
+	 * @param idleMillis
+	 *            milliseconds a session may go unused before it is evicted
+	 */
+	public SessionRegistry(long idleMillis)
+	{
+		this(idleMillis, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Constructs an empty registry.
+	 *
+	 * @param idleMillis
+	 *            milliseconds a session may go unused before it is evicted
+	 * @param maxCells
+	 *            most cells the games may have in total
+	 */
+	public SessionRegistry(long idleMillis, long maxCells)
+	{
+		idleNanos = idleMillis * 1000000;
+		this.maxCells = maxCells;
+	}
+
+	/**
+	 * Reserves the given number of cells and adds a session for the game made
+	 * by the given factory. Nothing is built if the games would have more cells
+	 * than the limit. If the factory throws, the cells are released again.
+	 *
+	 * @param gameCells
+	 *            number of cells of the game
+	 * @param factory
+	 *            makes the game of the session
+	 * @return new session, or null if there is no room for the game
+	 */
+	public Session create(long gameCells, Supplier<Minesweeper> factory)
+	{
+		long used;
+		do
+		{
+			used = cells.get();
+			if (gameCells > maxCells - used)
+			{
+				return null;
+			}
+		}
+		while (!cells.compareAndSet(used, used + gameCells));
+
+		Minesweeper game;
+		try
+		{
+			game = factory.get();
+		}
+		catch (RuntimeException | Error e)
+		{
+			cells.addAndGet(-gameCells);
+			throw e;
+		}
+		Session session = new Session(nextId.getAndIncrement(), game, gameCells);
+		sessions.put(session.id, session);
+		return session;
+	}
+
+	/**
+	 * Returns the session with the given id and marks it used, or returns null
+	 * if there is none.
+	 *
+	 * @param id
+	 *            id of the session
+	 * @return session, or null
+	 */
+	public Session get(long id)
+	{
+		Session session = sessions.get(id);
+		if (session != null)
+		{
+			session.lastUsed = System.nanoTime();
+		}
+		return session;
+	}
+
+	/**
+	 * Removes and closes the session with the given id.
+	 *
+	 * @param id
+	 *            id of the session
+	 * @return true if there was such a session
+	 */
+	public boolean remove(long id)
+	{
+		Session session = sessions.remove(id);
+		if (session == null)
+		{
+			return false;
+		}
+		synchronized (session)
+		{
+			close(session);
+		}
+		return true;
+	}
+
+	/**
+	 * Removes and closes every session not used within the idle timeout.
+	 * Sessions in use at the time are skipped.
+	 *
+	 * @return number of sessions evicted
+	 */
+	public int evictIdle()
+	{
+		long now = System.nanoTime();
+		int evicted = 0;
+		for (Session session : sessions.values())
+		{
+			if (now - session.lastUsed > idleNanos)
+			{
+				synchronized (session)
+				{
+					// check again, since it may have been used or removed meanwhile
+					if (System.nanoTime() - session.lastUsed > idleNanos
+							&& sessions.remove(session.id, session))
+					{
+						close(session);
+						evicted++;
+					}
+				}
+			}
+		}
+		return evicted;
+	}
+
+	/**
+	 * Marks a removed session closed and releases its cells. The caller must
+	 * hold the session's lock.
+	 */
+	private void close(Session session)
+	{
+		if (!session.closed)
+		{
+			session.closed = true;
+			cells.addAndGet(-session.cells);
+		}
+	}
+
+	/**
+	 * Returns the number of sessions.
+	 *
+	 * @return number of sessions
+	 */
+	public int size()
+	{
+		return sessions.size();
+	}
+
+	/**
+	 * Returns the total number of cells of the games.
+	 *
+	 * @return number of cells
+	 */
+	public long getCells()
+	{
+		return cells.get();
+	}
+
+	/**
+	 * One hosted game. Callers must hold the session's lock while they use the
+	 * game, and must check <code>isClosed</code> once they hold it.
+	 */
+	public static class Session
+	{
+		/**
+		 * Id of the session
+		 */
+		private final long id;
+		/**
+		 * Game of the session
+		 */
+		private final Minesweeper game;
+		/**
+		 * Cells reserved for the game
+		 */
+		private final long cells;
+		/**
+		 * Value of <code>System.nanoTime</code> when the session was last
+		 * looked up
+		 */
+		private volatile long lastUsed;
+		/**
+		 * Whether the session has been removed, guarded by the session's lock
+		 */
+		private boolean closed;
+
+		private Session(long id, Minesweeper game, long cells)
+		{
+			this.id = id;
+			this.game = game;
+			this.cells = cells;
+			lastUsed = System.nanoTime();
+		}
+
+		/**
+		 * Returns the id of the session.
+		 *
+		 * @return id
+		 */
+		public long getId()
+		{
+			return id;
+		}
+
+		/**
+		 * Returns the game of the session.
+		 *
+		 * @return game
+		 */
+		public Minesweeper getGame()
+		{
+			return game;
+		}
+
+		/**
+		 * Returns whether the session has been removed. The caller must hold
+		 * the session's lock.
+		 *
+		 * @return true if the session is closed
+		 */
+		public boolean isClosed()
+		{
+			return closed;
+		}
+	}
+}
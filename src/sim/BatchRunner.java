@@ -0,0 +1,290 @@
+package sim;
+
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import hw2.Minesweeper;
+
+/**
+ * Plays large numbers of minesweeper games without a user interface, spread
+ * over several threads, and reports aggregate results as it goes: win rate,
+ * clicks per game, games per second, and percentiles of the time per game.
+ * <p>
+ * Games are handed out in chunks of <code>CHUNK</code>. Each chunk gets its
+ * own stream split from a <code>SplittableRandom</code> seeded by the caller,
+ * and chunks are numbered in the order the streams are split, so the games of
+ * a run depend only on the seed, not on the number of threads or on how the
+ * chunks end up being shared among them. Each game gets one generator for the
+ * board and another for the strategy, both seeded from its chunk's stream.
+ * <p>
+ * Usage: <code>BatchRunner rows columns mines games [random|solver|exact]
+ * [seed] [threads]</code>
+ */
+public class BatchRunner
+{
+	/**
+	 * Number of games handed to a worker at a time
+	 */
+	private static final int CHUNK = 256;
+
+	/**
+	 * Number of rows of each game
+	 */
+	private final int rows;
+	/**
+	 * Number of columns of each game
+	 */
+	private final int cols;
+	/**
+	 * Number of mines of each game
+	 */
+	private final int mines;
+	/**
+	 * Strategy used to play the games
+	 */
+	private final Strategy strategy;
+
+	/**
+	 * Entry point.
+	 *
+	 * @param args
+	 *            rows, columns, mines, number of games, and optionally the
+	 *            strategy, the seed and the number of threads
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the games
+	 */
+	public static void main(String[] args) throws InterruptedException
+	{
+		if (args.length < 4)
+		{
+			System.err.println("Usage: BatchRunner rows columns mines games [random|solver|exact] [seed] [threads]");
+			return;
+		}
+		int rows = Integer.parseInt(args[0]);
+		int cols = Integer.parseInt(args[1]);
+		int mines = Integer.parseInt(args[2]);
+		long games = Long.parseLong(args[3]);
+		String name = args.length > 4 ? args[4] : "solver";
+		long seed = args.length > 5 ? Long.parseLong(args[5]) : 1;
+		int threads = args.length > 6 ? Integer.parseInt(args[6]) : Runtime.getRuntime().availableProcessors();
+
+		Strategy strategy;
+		if (name.equals("random"))
+		{
+			strategy = new RandomStrategy();
+		}
+		else if (name.equals("solver"))
+		{
+			strategy = new SolverStrategy(false);
+		}
+		else if (name.equals("exact"))
+		{
+			strategy = new SolverStrategy(true);
+		}
+		else
+		{
+			System.err.println("Unknown strategy " + name);
+			return;
+		}
+
+		System.out.println(rows + "x" + cols + ", " + mines + " mines, " + name + ", seed " + seed + ", "
+				+ threads + " threads");
+		new BatchRunner(rows, cols, mines, strategy).run(games, seed, threads, System.out, 1000);
+	}
+
+	/**
+	 * Constructs a runner for games of the given size.
+	 *
+	 * @param rows
+	 *            number of rows of each game
+	 * @param columns
+	 *            number of columns of each game
+	 * @param mines
+	 *            number of mines of each game
+	 * @param strategy
+	 *            strategy used to play the games
+	 */
+	public BatchRunner(int rows, int columns, int mines, Strategy strategy)
+	{
+		this.rows = rows;
+		this.cols = columns;
+		this.mines = mines;
+		this.strategy = strategy;
+	}
+
+	/**
+	 * Plays the given number of games and returns their results. While the
+	 * games are played, a line of results so far is printed at the given
+	 * interval, and once more at the end.
+	 *
+	 * @param games
+	 *            number of games to play
+	 * @param seed
+	 *            seed from which every game is generated
+	 * @param threads
+	 *            number of worker threads
+	 * @param out
+	 *            stream to print results to, or null for none
+	 * @param reportMillis
+	 *            milliseconds between lines of results
+	 * @return results of all the games
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the games
+	 */
+	public BatchStats run(long games, long seed, int threads, PrintStream out, long reportMillis)
+			throws InterruptedException
+	{
+		Batch batch = new Batch(games, seed, threads);
+		long start = System.nanoTime();
+		for (int i = 0; i < threads; i++)
+		{
+			Thread t = new Thread(batch, "batch-" + i);
+			t.setDaemon(true);
+			t.start();
+		}
+
+		while (!batch.done.await(reportMillis, TimeUnit.MILLISECONDS))
+		{
+			if (out != null)
+			{
+				out.println(format(batch.snapshot(), System.nanoTime() - start));
+			}
+		}
+		if (batch.failure != null)
+		{
+			throw new RuntimeException("Game failed", batch.failure);
+		}
+		BatchStats result = batch.snapshot();
+		if (out != null)
+		{
+			out.println(format(result, System.nanoTime() - start));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns one line describing the given results.
+	 *
+	 * @param stats
+	 *            results so far
+	 * @param elapsed
+	 *            nanoseconds since the start of the run
+	 * @return description of the results
+	 */
+	public static String format(BatchStats stats, long elapsed)
+	{
+		return String.format("%d games, %.2f%% won, %.1f clicks/game, %.0f games/s, "
+				+ "p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms",
+				stats.getGames(), 100 * stats.getWinRate(), stats.getClicksPerGame(),
+				stats.getGames() / (elapsed / 1e9), stats.getPercentile(0.5) / 1e6, stats.getPercentile(0.9) / 1e6,
+				stats.getPercentile(0.99) / 1e6, stats.getPercentile(0.999) / 1e6, stats.getMax() / 1e6);
+	}
+
+	/**
+	 * State shared by the workers of one run. Each worker takes chunks until
+	 * there are none left, recording results locally and adding them to the
+	 * total once per chunk.
+	 */
+	private class Batch implements Runnable
+	{
+		/**
+		 * Number of games to play
+		 */
+		private final long games;
+		/**
+		 * Source of the streams for the chunks
+		 */
+		private final SplittableRandom root;
+		/**
+		 * Index of the first game of the next chunk
+		 */
+		private long next;
+		/**
+		 * Results of the chunks finished so far
+		 */
+		private final BatchStats total;
+		/**
+		 * Counted down by each worker when it finishes
+		 */
+		private final CountDownLatch done;
+		/**
+		 * First exception thrown by a game, if any
+		 */
+		private volatile Throwable failure;
+
+		private Batch(long games, long seed, int threads)
+		{
+			this.games = games;
+			root = new SplittableRandom(seed);
+			total = new BatchStats();
+			done = new CountDownLatch(threads);
+		}
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				SplittableRandom stream;
+				long[] first = new long[1];
+				while ((stream = nextChunk(first)) != null)
+				{
+					BatchStats local = new BatchStats();
+					long end = Math.min(first[0] + CHUNK, games);
+					for (long i = first[0]; i < end; i++)
+					{
+						long t = System.nanoTime();
+						Minesweeper game = new Minesweeper(rows, cols, mines, new Random(stream.nextLong()));
+						strategy.play(game, new Random(stream.nextLong()));
+						local.record(game.isWon(), game.getClicks(), System.nanoTime() - t);
+					}
+					synchronized (this)
+					{
+						total.add(local);
+					}
+				}
+			}
+			catch (Throwable e)
+			{
+				failure = e;
+				synchronized (this)
+				{
+					next = games;
+				}
+			}
+			finally
+			{
+				done.countDown();
+			}
+		}
+
+		/**
+		 * Claims the next chunk and returns its stream, or returns null if
+		 * there are no chunks left. The index of the first game of the chunk
+		 * is stored in <code>first[0]</code>.
+		 */
+		private synchronized SplittableRandom nextChunk(long[] first)
+		{
+			if (next >= games)
+			{
+				return null;
+			}
+			first[0] = next;
+			next += CHUNK;
+			return root.split();
+		}
+
+		/**
+		 * Returns a copy of the results so far.
+		 */
+		private synchronized BatchStats snapshot()
+		{
+			BatchStats copy = new BatchStats();
+			copy.add(total);
+			return copy;
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package sim;
+
+import util.LatencyHistogram;
+
+/**
+ * Aggregate results of a batch of games: number of games and wins, total
+ * clicks, and a <code>LatencyHistogram</code> of the time taken by each game.
+ * Stats from different workers can be merged with <code>add</code>.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class BatchStats
+{
+	/**
+	 * Number of games recorded
+	 */
+	private long games;
+	/**
+	 * Number of games won
+	 */
+	private long wins;
+	/**
+	 * Total clicks over all games
+	 */
+	private long clicks;
+	/**
+	 * Time taken by each game
+	 */
+	private final LatencyHistogram times = new LatencyHistogram();
+
+	/**
+	 * Records the result of one game.
+	 *
+	 * @param won
+	 *            true if the game was won
+	 * @param clickCount
+	 *            number of clicks played
+	 * @param nanos
+	 *            time taken by the game, in nanoseconds
+	 */
+	public void record(boolean won, int clickCount, long nanos)
+	{
+		games++;
+		if (won)
+		{
+			wins++;
+		}
+		clicks += clickCount;
+		times.record(nanos);
+	}
+
+	/**
+	 * Adds the results recorded by other stats to these.
+	 *
+	 * @param other
+	 *            stats to add
+	 */
+	public void add(BatchStats other)
+	{
+		games += other.games;
+		wins += other.wins;
+		clicks += other.clicks;
+		times.add(other.times);
+	}
+
+	/**
+	 * Returns the number of games recorded.
+	 *
+	 * @return number of games
+	 */
+	public long getGames()
+	{
+		return games;
+	}
+
+	/**
+	 * Returns the fraction of games won, or 0 if there are none.
+	 *
+	 * @return win rate
+	 */
+	public double getWinRate()
+	{
+		return games == 0 ? 0 : (double) wins / games;
+	}
+
+	/**
+	 * Returns the average number of clicks per game, or 0 if there are none.
+	 *
+	 * @return clicks per game
+	 */
+	public double getClicksPerGame()
+	{
+		return games == 0 ? 0 : (double) clicks / games;
+	}
+
+	/**
+	 * Returns an upper bound on the time taken by the given fraction of the
+	 * games, accurate to the width of a histogram bucket.
+	 *
+	 * @param fraction
+	 *            fraction of games, between 0 and 1
+	 * @return duration in nanoseconds
+	 */
+	public long getPercentile(double fraction)
+	{
+		return times.getPercentile(fraction);
+	}
+
+	/**
+	 * Returns the duration of the longest game.
+	 *
+	 * @return duration in nanoseconds
+	 */
+	public long getMax()
+	{
+		return times.getMax();
+	}
+}
@@ -0,0 +1,31 @@
+package sim;
+
+import java.util.Random;
+
+import api.Status;
+import hw2.Minesweeper;
+
+/**
+ * Strategy that clicks a hidden cell chosen uniformly at random until the game
+ * is over. It gives a baseline for the other strategies.
+ */
+public class RandomStrategy implements Strategy
+{
+	@Override
+	public void play(Minesweeper game, Random rand)
+	{
+		int rows = game.getRows();
+		int cols = game.getColumns();
+		while (!game.isOver())
+		{
+			int row;
+			int col;
+			do
+			{
+				row = rand.nextInt(rows);
+				col = rand.nextInt(cols);
+			} while (game.getCell(row, col).getStatus() != Status.HIDDEN);
+			game.play(row, col);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package sim;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import api.Status;
+import hw2.Minesweeper;
+import hw2.ProbabilitySolver;
+import hw2.Solver;
+
+/**
+ * Strategy that clicks every cell a <code>Solver</code> proves safe, and
+ * guesses only when no such cell is left. Guesses are either random hidden
+ * cells not known to be mines, or, if exact probabilities are enabled, the
+ * cell a <code>ProbabilitySolver</code> finds least likely to be a mine.
+ */
+public class SolverStrategy implements Strategy
+{
+	/**
+	 * Whether guesses use exact probabilities
+	 */
+	private final boolean exact;
+
+	/**
+	 * Constructs a strategy.
+	 *
+	 * @param exact
+	 *            true to guess using exact probabilities, false to guess at
+	 *            random
+	 */
+	public SolverStrategy(boolean exact)
+	{
+		this.exact = exact;
+	}
+
+	@Override
+	public void play(Minesweeper game, Random rand)
+	{
+		int cols = game.getColumns();
+		game.play(rand.nextInt(game.getRows()), rand.nextInt(cols));
+
+		ProbabilitySolver probabilities = exact ? new ProbabilitySolver(game) : null;
+		Solver solver = exact ? probabilities.getSolver() : new Solver(game);
+		while (!game.isOver())
+		{
+			solver.update();
+			int x = solver.nextSafeCell();
+			if (x < 0 && exact)
+			{
+				probabilities.update();
+				x = probabilities.getBestGuess();
+			}
+			if (x < 0)
+			{
+				x = guess(game, solver.getMines(), probabilities, rand);
+			}
+			game.play(x / cols, x % cols);
+		}
+	}
+
+	/**
+	 * Picks a random hidden cell that is not known to be a mine and, if
+	 * probabilities are given, is not next to a revealed cell.
+	 *
+	 * @param game
+	 *            game being played
+	 * @param mines
+	 *            cells known to be mines
+	 * @param probabilities
+	 *            up to date probability solver, or null
+	 * @param rand
+	 *            random number generator
+	 * @return index of the cell
+	 */
+	private static int guess(Minesweeper game, BitSet mines, ProbabilitySolver probabilities, Random rand)
+	{
+		int rows = game.getRows();
+		int cols = game.getColumns();
+		int x = -1;
+		int seen = 0;
+		for (int tries = 0; tries < 64; tries++)
+		{
+			int y = rand.nextInt(rows * cols);
+			if (isCandidate(game, y, mines, probabilities))
+			{
+				return y;
+			}
+		}
+
+		// few candidates left, so pick one of them fairly
+		for (int y = 0; y < rows * cols; y++)
+		{
+			if (isCandidate(game, y, mines, probabilities) && rand.nextInt(++seen) == 0)
+			{
+				x = y;
+			}
+		}
+		if (x < 0)
+		{
+			// every off-boundary cell is known, so fall back to any hidden cell
+			// that is not a known mine
+			return guess(game, mines, null, rand);
+		}
+		return x;
+	}
+
+	/**
+	 * Returns whether a cell may be picked by <code>guess</code>.
+	 */
+	private static boolean isCandidate(Minesweeper game, int x, BitSet mines, ProbabilitySolver probabilities)
+	{
+		int cols = game.getColumns();
+		if (game.getCell(x / cols, x % cols).getStatus() != Status.HIDDEN || mines.get(x))
+		{
+			return false;
+		}
+		return probabilities == null || !probabilities.isOnBoundary(x / cols, x % cols);
+	}
+}
@@ -0,0 +1,23 @@
+package sim;
+
+import java.util.Random;
+
+import hw2.Minesweeper;
+
+/**
+ * A way of playing minesweeper without a user, for use by
+ * <code>BatchRunner</code>. Implementations must not keep state between
+ * games, since the same strategy is shared by every worker thread.
+ */
+public interface Strategy
+{
+	/**
+	 * Plays the given game until it is over.
+	 *
+	 * @param game
+	 *            a new game, not yet clicked
+	 * @param rand
+	 *            random number generator to use for any choices
+	 */
+	void play(Minesweeper game, Random rand);
+}
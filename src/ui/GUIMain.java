@@ -1,11 +1,11 @@
 package ui;
 
-import java.awt.Dimension;
+import java.awt.BorderLayout;
 import java.util.Random;
 
-import javax.swing.BoxLayout;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
+import javax.swing.JScrollPane;
 import javax.swing.SwingUtilities;
 
 import hw2.Minesweeper;
@@ -61,21 +61,22 @@ public class GUIMain
     JPanel scorePanel = new JPanel();
     MinesweeperPanel panel = new MinesweeperPanel(game, sleepTime, scorePanel);
 
-    // set the grid panel to receive notifications for animation
-    game.setObserver(panel);
+    // set the grid panel to receive notifications of changed cells; it
+    // observes each step itself when animating
+    game.setRegionObserver(panel);
     
-    // arrange the two panels vertically
+    // arrange the two panels vertically, with the grid panel scrolling
+    // if the board is too big to show at once
     JPanel mainPanel = new JPanel();
-    mainPanel.setLayout(new BoxLayout(mainPanel, BoxLayout.Y_AXIS));
-    mainPanel.add(scorePanel);
-    mainPanel.add(panel);
+    mainPanel.setLayout(new BorderLayout());
+    mainPanel.add(scorePanel, BorderLayout.NORTH);
+    mainPanel.add(new JScrollPane(panel), BorderLayout.CENTER);
 
     // create the frame
     JFrame frame = new JFrame("Minesweeper");
     frame.getContentPane().add(mainPanel);
 
-    // give it a nonzero size
-    panel.setPreferredSize(new Dimension(game.getColumns() * MinesweeperPanel.CELL_SIZE, game.getRows() * MinesweeperPanel.CELL_SIZE));    
+    // the grid panel asks for a view of up to the whole board
     frame.pack();
     
     // we want to shut down the application if the 
@@ -3,52 +3,155 @@ package ui;
 
 import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
-import javax.swing.SwingWorker;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
 import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
 import api.Cell;
 import api.CellObserver;
+import api.CellRegion;
 import api.Mark;
+import api.RegionObserver;
 import api.Status;
 import hw2.Minesweeper;
 
 /**
  * UI for a minesweeper game. Allows the option of animating the flood-fill part
- * of the game.
+ * of the game. The panel should be set as the game's region observer, so it
+ * repaints the cells each operation changed.
+ * <p>
+ * A flood fill is animated by playing the move at full speed with a cell
+ * observer that records every status change, and then replaying the
+ * recorded changes on a Swing timer. While the replay runs, the panel shows
+ * the recorded status of the cells of the fill instead of their status in
+ * the game, so the game itself is never left part way through a move.
+ * <p>
+ * The panel is meant to be placed in a <code>JScrollPane</code>. The board is
+ * split into square tiles of about <code>TILE_PIXELS</code> pixels, and a tile
+ * is only drawn, into an offscreen image, once some part of it is painted.
+ * Only the cells reported changed are drawn again, and painting copies only
+ * the tiles that meet the clip, so the cost of painting depends on the size
+ * of the screen and not of the board. The least recently painted tiles are
+ * dropped once there are more than <code>MAX_TILES</code>. The cells can be
+ * zoomed between <code>ZOOM_SIZES</code>, and a <code>MinimapPanel</code>
+ * in the score panel shows the whole board.
  */
-public class MinesweeperPanel extends JPanel implements CellObserver
+public class MinesweeperPanel extends JPanel implements RegionObserver, Scrollable
 {
   /**
-   * Size in pixels of the cells for the grid.
+   * Initial size in pixels of the cells for the grid.
    */
   public static final int CELL_SIZE = 40;
   
   /**
-   * Font size for text on grid cells.
+   * Font size for text on grid cells of size <code>CELL_SIZE</code>.
    */
   public static final int FONT_SIZE = 20;
+
+  /**
+   * Cell sizes in pixels that zooming steps through.
+   */
+  private static final int[] ZOOM_SIZES = { 2, 4, 6, 8, 12, 16, 24, 32, 40, 56, 80 };
+
+  /**
+   * Smallest cell size at which text is drawn on cells.
+   */
+  private static final int MIN_TEXT_SIZE = 12;
+
+  /**
+   * Smallest cell size at which the grid overlay is drawn.
+   */
+  private static final int MIN_OVERLAY_SIZE = 6;
+
+  /**
+   * Approximate size in pixels of a side of a tile.
+   */
+  private static final int TILE_PIXELS = 256;
+
+  /**
+   * Largest number of tiles kept.
+   */
+  private static final int MAX_TILES = 256;
+
+  /**
+   * Largest size in pixels of a side of the minimap.
+   */
+  private static final int MINIMAP_SIZE = 120;
+
+  /**
+   * Size of the visible part of the board when it is first shown.
+   */
+  private static final Dimension MAX_VIEWPORT = new Dimension(1200, 800);
+
+  /**
+   * Names of the replay speeds offered.
+   */
+  private static final String[] SPEED_NAMES = { "1x", "2x", "4x", "16x", "64x" };
+
+  /**
+   * Number of steps of count 0 cells replayed per frame at each speed.
+   */
+  private static final int[] SPEEDS = { 1, 2, 4, 16, 64 };
+
+  /**
+   * Status values, indexed by ordinal.
+   */
+  private static final Status[] STATUSES = Status.values();
   
   /**
    * Format string for seconds and mine count.
    */
   private static final String timeFormat = "%4d";
 
+  /**
+   * Text drawn on a revealed cell, indexed by count.
+   */
+  private static final String[] COUNT_TEXT = { "0", "1", "2", "3", "4", "5", "6", "7", "8" };
+
+  /**
+   * Color for revealed cells with count zero.
+   */
+  static final Color REGION_COLOR = new Color(0, 200, 200);
+
+  /**
+   * Font for text on grid cells.
+   */
+  private static final Font CELL_FONT = new Font(Font.SANS_SERIF, Font.PLAIN, FONT_SIZE);
+
   
   // Swing components
   private JButton hintButton;
+  private JButton zoomOutButton;
+  private JButton zoomInButton;
+  private JButton skipButton;
+  private JComboBox<String> speedBox;
+  private Timer animationTimer;
+  private MinimapPanel minimap;
   private JCheckBox animationCheckBox;
   private JCheckBox visibleCheckBox;
   private JLabel timeLabel;
@@ -61,19 +164,73 @@ public class MinesweeperPanel extends JPanel implements CellObserver
   private Minesweeper game;
   
   /**
-   * Delay between updates when animating clearRegion.
+   * Delay in milliseconds between frames when replaying a flood fill.
    */
   private int sleepTime;
   
   /**
-   * Indicates whether or not an animation is currently taking place.
+   * Indicates whether or not a recorded flood fill is being replayed.
+   */
+  private boolean animating;
+
+  /**
+   * Index, in row-major order, of the cell of each recorded step.
+   */
+  private int[] stepCells;
+
+  /**
+   * Ordinal of the status set by each recorded step.
+   */
+  private byte[] stepStatuses;
+
+  /**
+   * Number of recorded steps.
+   */
+  private int stepCount;
+
+  /**
+   * Number of recorded steps replayed so far.
    */
-  private volatile boolean animating; // flag shared with helper threads
+  private int stepsShown;
+
+  /**
+   * Status shown for each cell of the flood fill being replayed, by index
+   * in row-major order.
+   */
+  private final HashMap<Integer, Status> shownStatus;
   
   /**
    * Count of elapsed seconds (not counting time in animation).
    */
   private long currentSeconds;
+
+  /**
+   * Size in pixels of the cells, one of <code>ZOOM_SIZES</code>.
+   */
+  private int cellSize;
+
+  /**
+   * Font for text on cells of the current size.
+   */
+  private Font cellFont;
+
+  /**
+   * Number of cells along a side of a tile.
+   */
+  private int tileCells;
+
+  /**
+   * Images of the tiles drawn so far, by <code>tileKey</code>, with the most
+   * recently painted last.  Only used on the event thread.
+   */
+  private final LinkedHashMap<Long, BufferedImage> tiles;
+
+  /**
+   * Bit set for each cell, in row-major order, that has changed since it
+   * was last drawn into its tile.  Only used on the event thread, where
+   * moves are played and animated.
+   */
+  private final BitSet dirty;
   
   /**
    * Constructs the component.
@@ -82,6 +239,17 @@ public class MinesweeperPanel extends JPanel implements CellObserver
   {
     this.game = game;
     this.sleepTime = sleepTime;
+    dirty = new BitSet();
+    shownStatus = new HashMap<Integer, Status>();
+    tiles = new LinkedHashMap<Long, BufferedImage>(16, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest)
+      {
+        return size() > MAX_TILES;
+      }
+    };
+    setCellSize(CELL_SIZE);
     addMouseListener(new MyMouseListener());
     
     // components for score panel
@@ -101,153 +269,511 @@ public class MinesweeperPanel extends JPanel implements CellObserver
     hintButton.addActionListener(new HintButtonListener());
     scorePanel.add(hintButton);
 
+    zoomOutButton = new JButton("-");
+    zoomOutButton.addActionListener(new ZoomButtonListener(-1));
+    scorePanel.add(zoomOutButton);
+
+    zoomInButton = new JButton("+");
+    zoomInButton.addActionListener(new ZoomButtonListener(1));
+    scorePanel.add(zoomInButton);
+
     animationCheckBox = new JCheckBox("Animate");
     animationCheckBox.addActionListener(new AnimateCheckBoxListener());
     scorePanel.add(animationCheckBox);
+
+    speedBox = new JComboBox<String>(SPEED_NAMES);
+    scorePanel.add(speedBox);
+
+    skipButton = new JButton("skip");
+    skipButton.addActionListener(new SkipButtonListener());
+    scorePanel.add(skipButton);
     
     timeLabel = new JLabel(String.format(timeFormat, 0));
     timeLabel.setBackground(Color.CYAN);
     timeLabel.setOpaque(true);
     timeLabel.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 24));
     scorePanel.add(timeLabel);
+
+    minimap = new MinimapPanel(game, this, MINIMAP_SIZE);
+    scorePanel.add(minimap);
     
     // timer to update elapsed seconds
     TimerCallback cb = new TimerCallback();
     timer = new Timer(1000, cb);
     timer.start();
+
+    // timer to replay recorded flood fills
+    animationTimer = new Timer(Math.max(1, sleepTime), new AnimationCallback());
   }
 
   /**
-   * When animation is in effect, receives notification 
-   * when a cell status is modified.
+   * Starts replaying the steps recorded by the given recorder.  The cells
+   * of the fill are shown hidden, as they were before the move.
+   * @param recorder
+   */
+  private void startAnimation(Recorder recorder)
+  {
+    stepCells = recorder.cells;
+    stepStatuses = recorder.statuses;
+    stepCount = recorder.size;
+    stepsShown = 0;
+    for (int k = 0; k < stepCount; ++k)
+    {
+      shownStatus.put(stepCells[k], Status.HIDDEN);
+    }
+    animating = true;
+    animationTimer.start();
+  }
+
+  /**
+   * Replays the given number of steps of count 0 cells, along with the
+   * steps of other cells between them, or the rest of the recording if
+   * there are fewer.  The animation ends once every step is shown.
+   * @param zeroSteps
+   */
+  private void advanceAnimation(int zeroSteps)
+  {
+    int cols = game.getColumns();
+    int size = cellSize;
+    while (zeroSteps > 0 && stepsShown < stepCount)
+    {
+      int i = stepCells[stepsShown];
+      shownStatus.put(i, STATUSES[stepStatuses[stepsShown]]);
+      stepsShown++;
+
+      // the cells around this one are repainted too, since its arrow may
+      // point into one of them
+      int row = i / cols;
+      int col = i % cols;
+      markDirty(row, col);
+      repaint((col - 1) * size, (row - 1) * size, 3 * size + 1, 3 * size + 1);
+      if (game.getCell(row, col).getCount() == 0)
+      {
+        zeroSteps--;
+      }
+    }
+    if (stepsShown == stepCount)
+    {
+      finishAnimation();
+    }
+  }
+
+  /**
+   * Ends the replay, if one is running, and shows every cell as it is in
+   * the game.
+   */
+  private void finishAnimation()
+  {
+    if (!animating)
+    {
+      return;
+    }
+    animationTimer.stop();
+    int cols = game.getColumns();
+    for (Integer i : shownStatus.keySet())
+    {
+      markDirty(i / cols, i % cols);
+    }
+    shownStatus.clear();
+    stepCells = null;
+    stepStatuses = null;
+    animating = false;
+    repaint();
+  }
+
+  /**
+   * Returns the status to show for the given cell: its recorded status if
+   * it is part of a flood fill being replayed, or else its status in the
+   * game.
+   * @param row
+   * @param col
+   * @param c
+   * @return
+   */
+  private Status getShownStatus(int row, int col, Cell c)
+  {
+    if (!shownStatus.isEmpty())
+    {
+      Status s = shownStatus.get(row * game.getColumns() + col);
+      if (s != null)
+      {
+        return s;
+      }
+    }
+    return c.getStatus();
+  }
+
+  /**
+   * Receives notification of the cells changed by each operation on
+   * the game, and repaints just the rectangle holding them.  The minimap
+   * is updated too.  This should only be called on the event thread.
    */
   @Override
-  public void update(Cell cell)
+  public void cellsChanged(CellRegion region)
   {
-    if (animating)
+    int cols = game.getColumns();
+    for (int i = region.nextCell(0); i >= 0; i = region.nextCell(i + 1))
     {
-      // ok to call from auxiliary thread
-      repaint();
-      
-      // for the count 0 cells, delay for 'sleepTime'
-      if (cell.getCount() == 0)
+      dirty.set(region.getRow(i) * cols + region.getCol(i));
+    }
+    minimap.cellsChanged(region);
+    int size = cellSize;
+    long x = (long) region.getLeft() * size;
+    long y = (long) region.getTop() * size;
+    long w = (long) (region.getRight() - region.getLeft() + 1) * size;
+    long h = (long) (region.getBottom() - region.getTop() + 1) * size;
+    // one extra pixel for the right and bottom edges of the grid overlay
+    repaint(clamp(x), clamp(y), clamp(w + 1), clamp(h + 1));
+  }
+
+  /**
+   * Returns the size in pixels of the cells.
+   * @return
+   *   cell size
+   */
+  public int getCellSize()
+  {
+    return cellSize;
+  }
+
+  /**
+   * Sets the size in pixels of the cells, keeping the cell at the center
+   * of the visible part of the board in the center.  This should only be
+   * called on the event thread.
+   * @param size
+   *   new cell size
+   */
+  public void setCellSize(int size)
+  {
+    Rectangle view = getVisibleRect();
+    int old = cellSize;
+    cellSize = size;
+    cellFont = CELL_FONT.deriveFont((float) FONT_SIZE * size / CELL_SIZE);
+    tileCells = Math.max(1, TILE_PIXELS / size);
+    tiles.clear();
+    revalidate();
+    repaint();
+
+    if (old > 0 && getParent() instanceof JViewport)
+    {
+      // center on the same point of the board once the new size is in effect
+      long cx = (long) (view.x + view.width / 2) * size / old;
+      long cy = (long) (view.y + view.height / 2) * size / old;
+      ((JViewport) getParent()).setViewSize(getPreferredSize());
+      scrollRectToVisible(new Rectangle(clamp(cx - view.width / 2), clamp(cy - view.height / 2),
+          view.width, view.height));
+    }
+  }
+
+  /**
+   * Scrolls so that the cell at the given position is at the center of the
+   * visible part of the board.
+   * @param row
+   * @param col
+   */
+  public void centerOn(int row, int col)
+  {
+    Rectangle view = getVisibleRect();
+    long x = (long) col * cellSize + cellSize / 2 - view.width / 2;
+    long y = (long) row * cellSize + cellSize / 2 - view.height / 2;
+    scrollRectToVisible(new Rectangle(clamp(Math.max(0, x)), clamp(Math.max(0, y)), view.width, view.height));
+  }
+
+  /**
+   * Returns the given number of pixels, limited to the range of an
+   * <code>int</code>.
+   * @param pixels
+   * @return
+   */
+  private static int clamp(long pixels)
+  {
+    return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, pixels));
+  }
+
+  @Override
+  public void addNotify()
+  {
+    super.addNotify();
+
+    // move the minimap's view rectangle whenever the board is scrolled
+    if (getParent() instanceof JViewport)
+    {
+      ((JViewport) getParent()).addChangeListener(new ChangeListener()
       {
-        try
+        @Override
+        public void stateChanged(ChangeEvent e)
         {
-          Thread.sleep(sleepTime);
+          minimap.repaint();
         }
-        catch (InterruptedException ignore)
-        {
-        }
-      }
+      });
     }
   }
 
+  @Override
+  public Dimension getPreferredSize()
+  {
+    return new Dimension(clamp((long) game.getColumns() * cellSize + 1),
+        clamp((long) game.getRows() * cellSize + 1));
+  }
+
+  @Override
+  public Dimension getPreferredScrollableViewportSize()
+  {
+    Dimension d = getPreferredSize();
+    return new Dimension(Math.min(d.width, MAX_VIEWPORT.width), Math.min(d.height, MAX_VIEWPORT.height));
+  }
+
+  @Override
+  public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction)
+  {
+    return cellSize;
+  }
+
+  @Override
+  public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction)
+  {
+    int extent = orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+    return Math.max(cellSize, extent - cellSize);
+  }
+
+  @Override
+  public boolean getScrollableTracksViewportWidth()
+  {
+    return false;
+  }
+
+  @Override
+  public boolean getScrollableTracksViewportHeight()
+  {
+    return false;
+  }
+
 
   @Override
   public void paintComponent(Graphics g)
   {
-    // clear background
-    g.clearRect(0, 0, getWidth(), getHeight());
-    boolean showAll = visibleCheckBox.isSelected();
-    
-    // time label
-    timeLabel.setText(String.format(timeFormat, currentSeconds));
-    
+    // clear background outside the board
+    super.paintComponent(g);
+
     // mine label
     int currentMines = game.getNumMines() - game.getNumFlags();
     mineLabel.setText(String.format(timeFormat, currentMines));
-    
-    // draw cells
-    for (int row = 0; row < game.getRows(); ++row)
+
+    // copy the tiles that meet the clip, drawing them first if need be
+    Rectangle clip = g.getClipBounds();
+    if (clip == null)
+    {
+      clip = new Rectangle(0, 0, getWidth(), getHeight());
+    }
+    int size = cellSize;
+    int firstRow = Math.max(0, clip.y / size);
+    int lastRow = Math.min(game.getRows() - 1, (clip.y + clip.height) / size);
+    int firstCol = Math.max(0, clip.x / size);
+    int lastCol = Math.min(game.getColumns() - 1, (clip.x + clip.width) / size);
+    if (firstRow > lastRow || firstCol > lastCol)
+    {
+      return;
+    }
+    int tilePixels = tileCells * size;
+    for (int tr = firstRow / tileCells; tr <= lastRow / tileCells; ++tr)
     {
-      for (int col = 0; col < game.getColumns(); ++col)
+      for (int tc = firstCol / tileCells; tc <= lastCol / tileCells; ++tc)
       {
-        Cell c = game.getCell(row, col);
-        
-        // fill the cell 
-        Color color = getColor(c);
-        g.setColor(color);
-        g.fillRect(col * CELL_SIZE, row * CELL_SIZE, CELL_SIZE, CELL_SIZE);
-        
-        // possibly draw some text
-        if (showAll || c.getStatus() == Status.REVEALED)
+        g.drawImage(getTile(tr, tc), tc * tilePixels, tr * tilePixels, null);
+      }
+    }
+
+    // possibly draw lines to animate exploring
+    if (animating)
+    {
+      drawArrows(g, firstRow, lastRow, firstCol, lastCol);
+    }
+  }
+
+  /**
+   * Marks the cell at the given position to be drawn again.
+   * @param row
+   * @param col
+   */
+  private void markDirty(int row, int col)
+  {
+    dirty.set(row * game.getColumns() + col);
+  }
+
+  /**
+   * Marks every cell to be drawn again.  This should only be called on the
+   * event thread.
+   */
+  private void markAllDirty()
+  {
+    tiles.clear();
+  }
+
+  /**
+   * Returns the key in <code>tiles</code> of the tile at the given position.
+   * @param tileRow
+   * @param tileCol
+   * @return
+   */
+  private static long tileKey(int tileRow, int tileCol)
+  {
+    return ((long) tileRow << 32) | (tileCol & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Returns the image of the tile at the given position, with every cell
+   * that has changed drawn again.  The tile is created and drawn in full if
+   * it is not kept.
+   * @param tileRow
+   * @param tileCol
+   * @return
+   */
+  private BufferedImage getTile(int tileRow, int tileCol)
+  {
+    int cols = game.getColumns();
+    int top = tileRow * tileCells;
+    int left = tileCol * tileCells;
+    int bottom = Math.min(game.getRows(), top + tileCells);
+    int right = Math.min(cols, left + tileCells);
+
+    BufferedImage tile = tiles.get(tileKey(tileRow, tileCol));
+    boolean all = tile == null;
+    int[] changed = new int[0];
+    int n = 0;
+    for (int row = top; row < bottom; ++row)
+    {
+      int from = row * cols + left;
+      int to = row * cols + right;
+      if (!all)
+      {
+        for (int i = dirty.nextSetBit(from); i >= 0 && i < to; i = dirty.nextSetBit(i + 1))
         {
-          g.setColor(Color.BLACK);
-          if (c.isMine())
+          if (n == changed.length)
           {
-            drawText(g, row, col, "x");
+            changed = Arrays.copyOf(changed, Math.max(16, n * 2));
           }
-          else
-          {
-            drawText(g, row, col, "" + c.getCount());
-          }            
+          changed[n++] = i;
         }
-        else if (c.getStatus() == Status.HIDDEN
-            && c.getMark() == Mark.QUESTION_MARK)
-        {
-          g.setColor(Color.BLACK);
-          drawText(g, row, col, "?");
-        }
-        else if (c.getStatus() == Status.HIDDEN && c.getMark() == Mark.FLAG)
+      }
+      dirty.clear(from, to);
+    }
+
+    if (all)
+    {
+      tile = new BufferedImage((right - left) * cellSize + 1, (bottom - top) * cellSize + 1,
+          BufferedImage.TYPE_INT_RGB);
+      tiles.put(tileKey(tileRow, tileCol), tile);
+    }
+    Graphics2D tg = tile.createGraphics();
+    tg.translate(-left * cellSize, -top * cellSize);
+    tg.setFont(cellFont);
+    FontMetrics fm = tg.getFontMetrics();
+    boolean showAll = visibleCheckBox.isSelected();
+    if (all)
+    {
+      for (int row = top; row < bottom; ++row)
+      {
+        for (int col = left; col < right; ++col)
         {
-          g.setColor(Color.BLACK);
-          drawText(g, row, col, "F");
+          drawCell(tg, fm, row, col, showAll);
         }
       }
     }
+    else
+    {
+      for (int k = 0; k < n; ++k)
+      {
+        drawCell(tg, fm, changed[k] / cols, changed[k] % cols, showAll);
+      }
+    }
+    tg.dispose();
+    return tile;
+  }
+
+  /**
+   * Draws the cell at the given position, with its text and its part of
+   * the grid overlay.
+   * @param g
+   * @param fm
+   * @param row
+   * @param col
+   * @param showAll
+   */
+  private void drawCell(Graphics g, FontMetrics fm, int row, int col, boolean showAll)
+  {
+    Cell c = game.getCell(row, col);
+    Status s = getShownStatus(row, col, c);
+
+    // fill the cell
+    Color color = getColor(c, s);
+    g.setColor(color);
+    g.fillRect(col * cellSize, row * cellSize, cellSize, cellSize);
 
     // draw grid overlay
-    g.setColor(Color.WHITE);
-    for (int row = 0; row < game.getRows(); ++row)
+    if (cellSize >= MIN_OVERLAY_SIZE)
+    {
+      g.setColor(Color.WHITE);
+      g.drawRect(col * cellSize, row * cellSize, cellSize, cellSize);
+    }
+
+    // possibly draw some text, unless it would be too small to read
+    if (cellSize < MIN_TEXT_SIZE)
     {
-      for (int col = 0; col < game.getColumns(); ++col)
+      return;
+    }
+    if (showAll || s == Status.REVEALED)
+    {
+      g.setColor(Color.BLACK);
+      if (c.isMine())
+      {
+        drawText(g, fm, row, col, "x");
+      }
+      else
       {
-        g.drawRect(col * CELL_SIZE, row * CELL_SIZE, CELL_SIZE, CELL_SIZE);
+        drawText(g, fm, row, col, COUNT_TEXT[c.getCount()]);
       }
     }
-
-    // possibly draw lines to animate exploring
-    if (animating)
+    else if (s == Status.HIDDEN
+        && c.getMark() == Mark.QUESTION_MARK)
     {
-      drawArrows(g);
+      g.setColor(Color.BLACK);
+      drawText(g, fm, row, col, "?");
+    }
+    else if (s == Status.HIDDEN && c.getMark() == Mark.FLAG)
+    {
+      g.setColor(Color.BLACK);
+      drawText(g, fm, row, col, "F");
     }
   }
 
   /**
    * Draws the given string at the center of the cell at row, column.
    * @param g
+   * @param fm
    * @param row
    * @param col
    * @param text
    */
-  private void drawText(Graphics g, int row, int col, String text)
+  private void drawText(Graphics g, FontMetrics fm, int row, int col, String text)
   {
-    Font f = new Font(Font.SANS_SERIF, Font.PLAIN, FONT_SIZE);
-    g.setFont(f);
-    FontMetrics fm = g.getFontMetrics(f);
-    // String text = "" + c.getCount();
     int h = fm.getHeight();
     int w = fm.stringWidth(text);
-    int x = col * CELL_SIZE + CELL_SIZE / 2 - (w / 2);
-    int y = row * CELL_SIZE + CELL_SIZE / 2 + (h / 2) - 2;
+    int x = col * cellSize + cellSize / 2 - (w / 2);
+    int y = row * cellSize + cellSize / 2 + (h / 2) - 2;
     g.drawString(text, x, y);
   }
 
   /**
-   * Returns a color for cells with the given Status.
+   * Returns a color for the given cell, shown with the given Status.
    * 
-   * @param status
+   * @param m
+   * @param s
    * @return
    */
-  private Color getColor(Cell m)
+  private Color getColor(Cell m, Status s)
   {
-    // dark cyan for cells with value zero
-    final Color regionColor = new Color(0, 200, 200);
-    
     if (m == null)
       return Color.BLACK;
-    Status s = m.getStatus();
     Mark mark = m.getMark();
     if (s == Status.HIDDEN && mark == Mark.NONE)
     {
@@ -265,7 +791,7 @@ public class MinesweeperPanel extends JPanel implements CellObserver
     {
       return Color.YELLOW;
     }
-    else if (isExploring(m))
+    else if (isExploring(s))
     {
       return Color.GREEN;
     }
@@ -278,7 +804,7 @@ public class MinesweeperPanel extends JPanel implements CellObserver
       if (m.getCount() > 0)
         return Color.CYAN;
       else
-        return regionColor;
+        return REGION_COLOR;
     }
     else if (s == Status.REVEALED && m.isMine())
     {
@@ -289,54 +815,59 @@ public class MinesweeperPanel extends JPanel implements CellObserver
   }
 
   /**
-   * Returns true if c is in one of the EXPLORING states.
-   * @param c
+   * Returns true if s is one of the EXPLORING states.
+   * @param s
    * @return
    */
-  private boolean isExploring(Cell c)
+  private boolean isExploring(Status s)
   {
-    Status s = c.getStatus();
     return (s == Status.EXPLORE_UP || s == Status.EXPLORE_LEFT
         || s == Status.EXPLORE_DOWN || s == Status.EXPLORE_RIGHT);
   }
 
   /**
-   * Draws a line from the center of each cell in EXPLORING state to
-   * indicate the direction in which it is exploring.
+   * Draws a line from the center of each cell in EXPLORING state, within
+   * the given rows and columns, to indicate the direction in which it is
+   * exploring.
    * @param g
+   * @param firstRow
+   * @param lastRow
+   * @param firstCol
+   * @param lastCol
    */
-  private void drawArrows(Graphics g)
+  private void drawArrows(Graphics g, int firstRow, int lastRow, int firstCol, int lastCol)
   {
 
     g.setColor(Color.BLACK);
     ((Graphics2D)g).setStroke(new BasicStroke(2.0f));
 
-    for (int row = 0; row < game.getRows(); ++row)
+    int size = cellSize;
+    for (int row = firstRow; row <= lastRow; ++row)
     {
-      for (int col = 0; col < game.getColumns(); ++col)
+      for (int col = firstCol; col <= lastCol; ++col)
       {
         Cell c = game.getCell(row, col);
+        Status s = getShownStatus(row, col, c);
         {
-          if (isExploring(c))
+          if (isExploring(s))
           {
-            int x = col * CELL_SIZE + CELL_SIZE / 2; // - (maze.getColumns() / 2);
-            int y = row * CELL_SIZE + CELL_SIZE / 2; // + (maze.getRows() / 2);
+            int x = col * size + size / 2;
+            int y = row * size + size / 2;
             int x2 = x;
             int y2 = y;
-            // String text = "";
-            switch (c.getStatus())
+            switch (s)
             {
               case EXPLORE_UP:
-                y2 = y - CELL_SIZE;
+                y2 = y - size;
                 break;
               case EXPLORE_LEFT:
-                x2 = x - CELL_SIZE;
+                x2 = x - size;
                 break;
               case EXPLORE_DOWN:
-                y2 = y + CELL_SIZE;
+                y2 = y + size;
                 break;
               case EXPLORE_RIGHT:
-                x2 = x + CELL_SIZE;
+                x2 = x + size;
                 break;
               default:
             }
@@ -351,32 +882,26 @@ public class MinesweeperPanel extends JPanel implements CellObserver
   
   
   /**
-   * Worker thread for running the clearRegion animation.
+   * Observer that records every status change of a move, to be replayed.
    */
-  private class AnimationWorker extends SwingWorker<Void, Void>
+  private class Recorder implements CellObserver
   {
-    private int row;
-    private int col;
-    public AnimationWorker(int r, int c)
-    {
-      row = r;
-      col = c;
-    }
-    
-    @Override
-    protected Void doInBackground() throws Exception
-    {
-      Thread.currentThread().setName("clearRegion worker thread");
-      game.play(row, col);
-      return null;
-    }
-    
+    private int[] cells = new int[64];
+    private byte[] statuses = new byte[64];
+    private int size;
+
     @Override
-    protected void done()
+    public void update(Cell c)
     {
-      animating = false;
+      if (size == cells.length)
+      {
+        cells = Arrays.copyOf(cells, size * 2);
+        statuses = Arrays.copyOf(statuses, size * 2);
+      }
+      cells[size] = c.getRow() * game.getColumns() + c.getCol();
+      statuses[size] = (byte) c.getStatus().ordinal();
+      size++;
     }
-    
   }
   
   /**
@@ -388,20 +913,24 @@ public class MinesweeperPanel extends JPanel implements CellObserver
     @Override
     public void mouseClicked(MouseEvent e)
     {
-      // ignore clicks if an animation is in progress
-      if (!animating)
+      final int col = e.getX() / cellSize;
+      final int row = e.getY() / cellSize;
+
+      // ignore clicks if an animation is in progress, or outside the board
+      if (!animating && row < game.getRows() && col < game.getColumns())
       {
-        final int col = e.getX() / CELL_SIZE;
-        final int row = e.getY() / CELL_SIZE;
- 
         if (e.getButton() == MouseEvent.BUTTON1)
         {
           Cell c = game.getCell(row, col);
           if (c.getCount() == 0 && sleepTime > 0 && animationCheckBox.isSelected())
           {
-            // if it's a cell with count 0, run in worker thread to get animation
-            animating = true;
-            new AnimationWorker(row, col).execute();
+            // if it's a cell with count 0, record every step of the flood
+            // fill and replay the steps afterwards to get animation
+            Recorder recorder = new Recorder();
+            game.setObserver(recorder);
+            game.play(row, col);
+            game.setObserver(null);
+            startAnimation(recorder);
           }
           else
           {
@@ -414,7 +943,6 @@ public class MinesweeperPanel extends JPanel implements CellObserver
           game.toggleMark(row, col);
         }
       }
-      repaint();
     }
 
     @Override
@@ -451,10 +979,64 @@ public class MinesweeperPanel extends JPanel implements CellObserver
     public void actionPerformed(ActionEvent e)
     {
       game.hint();
-      repaint();
     }    
   }
   
+  /**
+   * Handler for the skip button, which ends the replay of a flood fill.
+   */
+  private class SkipButtonListener implements ActionListener
+  {
+    @Override
+    public void actionPerformed(ActionEvent e)
+    {
+      finishAnimation();
+    }
+  }
+
+  /**
+   * Timer callback replays the next frame of a recorded flood fill.
+   */
+  private class AnimationCallback implements ActionListener
+  {
+    @Override
+    public void actionPerformed(ActionEvent e)
+    {
+      advanceAnimation(SPEEDS[speedBox.getSelectedIndex()]);
+    }
+  }
+
+  /**
+   * Handler for the zoom buttons.
+   */
+  private class ZoomButtonListener implements ActionListener
+  {
+    /**
+     * Number of steps through <code>ZOOM_SIZES</code> to take.
+     */
+    private int step;
+
+    public ZoomButtonListener(int givenStep)
+    {
+      step = givenStep;
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e)
+    {
+      int k = 0;
+      while (k < ZOOM_SIZES.length - 1 && ZOOM_SIZES[k] < cellSize)
+      {
+        k++;
+      }
+      k = Math.max(0, Math.min(ZOOM_SIZES.length - 1, k + step));
+      if (ZOOM_SIZES[k] != cellSize)
+      {
+        setCellSize(ZOOM_SIZES[k]);
+      }
+    }
+  }
+  
   /**
    * Handler for changes in the "Visible" check box.
    */
@@ -463,6 +1045,7 @@ public class MinesweeperPanel extends JPanel implements CellObserver
     @Override
     public void actionPerformed(ActionEvent e)
     {
+      markAllDirty();
       repaint();
     }        
   }
@@ -477,7 +1060,7 @@ public class MinesweeperPanel extends JPanel implements CellObserver
     {
       if (animating && !animationCheckBox.isSelected())
       {
-        animating = false;
+        finishAnimation();
       }     
     }        
   }
@@ -499,7 +1082,7 @@ public class MinesweeperPanel extends JPanel implements CellObserver
       {
         // this is going to drift...
         currentSeconds += 1;      
-        repaint();
+        timeLabel.setText(String.format(timeFormat, currentSeconds));
       }
     }    
   }
@@ -0,0 +1,262 @@
+package ui;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.BitSet;
+
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+
+import api.Cell;
+import api.CellRegion;
+import api.Mark;
+import api.Status;
+import hw2.Minesweeper;
+
+/**
+ * Downsampled picture of a whole minesweeper board, with a rectangle showing
+ * the part visible in a <code>MinesweeperPanel</code>. Clicking the minimap
+ * centers the panel on that point.
+ * <p>
+ * Each pixel stands for a square block of cells and is the average of the
+ * colors of its hidden, flagged and revealed cells. The minimap keeps the
+ * number of cells of each kind per block, and one bit per cell for whether it
+ * was last seen revealed and whether it was last seen flagged, so a change to
+ * a cell only updates the counts and the one pixel of its block.
+ */
+public class MinimapPanel extends JComponent
+{
+  /**
+   * Version of the serialized form.
+   */
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Color of the view rectangle.
+   */
+  private static final Color VIEW_COLOR = Color.BLACK;
+
+  /**
+   * Colors of hidden, revealed, exploded and flagged cells, averaged
+   * into the pixel of each block.
+   */
+  private static final Color[] COLORS = { Color.LIGHT_GRAY, MinesweeperPanel.REGION_COLOR, Color.RED,
+      Color.ORANGE };
+
+  /**
+   * The game to be displayed.
+   */
+  private Minesweeper game;
+
+  /**
+   * The panel whose visible part is shown.
+   */
+  private MinesweeperPanel view;
+
+  /**
+   * Number of cells along a side of a block.
+   */
+  private int scale;
+
+  /**
+   * Number of blocks across.
+   */
+  private int blockCols;
+
+  /**
+   * One pixel per block.
+   */
+  private BufferedImage image;
+
+  /**
+   * Number of revealed non-mine cells in each block.
+   */
+  private int[] revealedCount;
+
+  /**
+   * Number of revealed mines in each block.
+   */
+  private int[] explodedCount;
+
+  /**
+   * Number of hidden flagged cells in each block.
+   */
+  private int[] flaggedCount;
+
+  /**
+   * Bit set for each cell, in row-major order, last seen revealed.
+   */
+  private BitSet revealed;
+
+  /**
+   * Bit set for each cell, in row-major order, last seen hidden and flagged.
+   */
+  private BitSet flagged;
+
+  /**
+   * Constructs a minimap for the given game and panel.  The state of every
+   * cell is read once, so games already in progress are shown correctly.
+   * @param givenGame
+   *   game to be displayed
+   * @param givenView
+   *   panel whose visible part is shown
+   * @param maxSize
+   *   largest size in pixels of a side of the minimap
+   */
+  public MinimapPanel(Minesweeper givenGame, MinesweeperPanel givenView, int maxSize)
+  {
+    game = givenGame;
+    view = givenView;
+    int rows = game.getRows();
+    int cols = game.getColumns();
+    scale = Math.max(1, (Math.max(rows, cols) + maxSize - 1) / maxSize);
+    blockCols = (cols + scale - 1) / scale;
+    int blockRows = (rows + scale - 1) / scale;
+    image = new BufferedImage(blockCols, blockRows, BufferedImage.TYPE_INT_RGB);
+    revealedCount = new int[blockRows * blockCols];
+    explodedCount = new int[revealedCount.length];
+    flaggedCount = new int[revealedCount.length];
+    revealed = new BitSet();
+    flagged = new BitSet();
+
+    for (int row = 0; row < rows; ++row)
+    {
+      for (int col = 0; col < cols; ++col)
+      {
+        updateCell(row, col);
+      }
+    }
+    for (int b = 0; b < revealedCount.length; ++b)
+    {
+      updatePixel(b);
+    }
+
+    setPreferredSize(new Dimension(blockCols + 2, blockRows + 2));
+    addMouseListener(new MouseAdapter()
+    {
+      @Override
+      public void mousePressed(MouseEvent e)
+      {
+        int row = Math.min(game.getRows() - 1, Math.max(0, (e.getY() - 1) * scale));
+        int col = Math.min(game.getColumns() - 1, Math.max(0, (e.getX() - 1) * scale));
+        view.centerOn(row, col);
+      }
+    });
+  }
+
+  /**
+   * Updates the minimap for the given changed cells.  This may be called
+   * from any thread; the work is done on the event thread.
+   * @param region
+   *   cells changed
+   */
+  public void cellsChanged(final CellRegion region)
+  {
+    SwingUtilities.invokeLater(new Runnable()
+    {
+      public void run()
+      {
+        BitSet blocks = new BitSet();
+        for (int i = region.nextCell(0); i >= 0; i = region.nextCell(i + 1))
+        {
+          int row = region.getRow(i);
+          int col = region.getCol(i);
+          if (updateCell(row, col))
+          {
+            blocks.set((row / scale) * blockCols + col / scale);
+          }
+        }
+        for (int b = blocks.nextSetBit(0); b >= 0; b = blocks.nextSetBit(b + 1))
+        {
+          updatePixel(b);
+        }
+        repaint();
+      }
+    });
+  }
+
+  @Override
+  public void paintComponent(Graphics g)
+  {
+    g.setColor(VIEW_COLOR);
+    g.drawRect(0, 0, image.getWidth() + 1, image.getHeight() + 1);
+    g.drawImage(image, 1, 1, null);
+
+    // rectangle around the visible part of the board
+    Rectangle visible = view.getVisibleRect();
+    long pixels = (long) view.getCellSize() * scale;
+    int x = (int) (visible.x / pixels);
+    int y = (int) (visible.y / pixels);
+    int w = (int) ((visible.x + visible.width) / pixels) - x;
+    int h = (int) ((visible.y + visible.height) / pixels) - y;
+    g.drawRect(x + 1, y + 1, Math.max(1, w), Math.max(1, h));
+  }
+
+  /**
+   * Brings the counts of the block holding the cell at the given position
+   * up to date with the cell.
+   * @param row
+   * @param col
+   * @return
+   *   true if the counts changed
+   */
+  private boolean updateCell(int row, int col)
+  {
+    Cell c = game.getCell(row, col);
+    int i = row * game.getColumns() + col;
+    int b = (row / scale) * blockCols + col / scale;
+    boolean isRevealed = c.getStatus() != Status.HIDDEN;
+    boolean isFlagged = !isRevealed && c.getMark() == Mark.FLAG;
+    boolean changed = false;
+
+    if (isRevealed != revealed.get(i))
+    {
+      // cells are only ever revealed, and a mine cannot move once any
+      // cell has been revealed
+      int[] counts = c.isMine() ? explodedCount : revealedCount;
+      counts[b] += isRevealed ? 1 : -1;
+      revealed.set(i, isRevealed);
+      changed = true;
+    }
+    if (isFlagged != flagged.get(i))
+    {
+      flaggedCount[b] += isFlagged ? 1 : -1;
+      flagged.set(i, isFlagged);
+      changed = true;
+    }
+    return changed;
+  }
+
+  /**
+   * Sets the pixel of the given block to the average color of its cells.
+   * @param b
+   *   index of a block
+   */
+  private void updatePixel(int b)
+  {
+    int blockRow = b / blockCols;
+    int blockCol = b % blockCols;
+    int height = Math.min(scale, game.getRows() - blockRow * scale);
+    int width = Math.min(scale, game.getColumns() - blockCol * scale);
+    int total = height * width;
+    int hidden = total - revealedCount[b] - explodedCount[b] - flaggedCount[b];
+
+    int[] weights = { hidden, revealedCount[b], explodedCount[b], flaggedCount[b] };
+    long red = 0;
+    long green = 0;
+    long blue = 0;
+    for (int k = 0; k < COLORS.length; ++k)
+    {
+      red += (long) COLORS[k].getRed() * weights[k];
+      green += (long) COLORS[k].getGreen() * weights[k];
+      blue += (long) COLORS[k].getBlue() * weights[k];
+    }
+    image.setRGB(blockCol, blockRow,
+        new Color((int) (red / total), (int) (green / total), (int) (blue / total)).getRGB());
+  }
+}
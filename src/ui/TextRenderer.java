@@ -0,0 +1,190 @@
+package ui;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+/**
+ * Draws game grids, given as arrays of strings, on a terminal. Each frame is
+ * built in one reusable <code>StringBuilder</code> and written out with a
+ * single write, rather than one write per character.
+ * <p>
+ * In ANSI mode the grid is drawn at the top of the screen, and after the
+ * first frame only the cells that differ from the previous frame are drawn
+ * again, using cursor positioning escape codes. Everything below the grid is
+ * cleared, and the cursor is left there for further output.
+ */
+public class TextRenderer
+{
+  /**
+   * Escape sequence that starts every ANSI control code.
+   */
+  private static final String CSI = "\u001b[";
+
+  /**
+   * Number of characters to the left of the first column of a row.
+   */
+  private static final int MARGIN = 6;
+
+  /**
+   * Destination of the frames.
+   */
+  private PrintWriter out;
+
+  /**
+   * Whether to use ANSI escape codes to redraw only changed cells.
+   */
+  private boolean ansi;
+
+  /**
+   * Buffer in which each frame is built.
+   */
+  private StringBuilder frame;
+
+  /**
+   * Rows of the frame drawn last in ANSI mode, or null if none has been.
+   */
+  private String[] previous;
+
+  /**
+   * Constructs a renderer writing to the given stream.
+   * @param stream
+   *   stream to which frames are written
+   * @param useAnsi
+   *   true if only the cells changed since the previous frame should be
+   *   redrawn, using ANSI escape codes
+   */
+  public TextRenderer(OutputStream stream, boolean useAnsi)
+  {
+    out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(stream)), false);
+    ansi = useAnsi;
+    frame = new StringBuilder();
+  }
+
+  /**
+   * Draws the given grid, marked with indices in the left and top margins.
+   * @param strings
+   *   array of strings representing a grid
+   */
+  public void render(String[] strings)
+  {
+    frame.setLength(0);
+    if (!ansi)
+    {
+      appendGrid(strings);
+    }
+    else if (previous == null || !sameShape(previous, strings))
+    {
+      // clear the screen and draw everything
+      frame.append(CSI).append("2J").append(CSI).append("H");
+      appendGrid(strings);
+    }
+    else
+    {
+      // screen rows and columns are 1-based, with the column labels on
+      // the first row
+      for (int row = 0; row < strings.length; row += 1)
+      {
+        String before = previous[row];
+        String current = strings[row];
+        for (int col = 0; col < current.length(); col += 1)
+        {
+          char ch = current.charAt(col);
+          if (ch != before.charAt(col))
+          {
+            frame.append(CSI).append(row + 2).append(';').append(MARGIN + 2 * col + 1).append('H');
+            frame.append(ch);
+          }
+        }
+      }
+    }
+    if (ansi)
+    {
+      // leave the cursor below the grid, with the rest of the screen clear
+      frame.append(CSI).append(strings.length + 2).append(";1H").append(CSI).append('J');
+      previous = strings.clone();
+    }
+    out.append(frame);
+    out.flush();
+  }
+
+  /**
+   * Appends the whole grid, with its margins, to the frame.
+   * @param strings
+   *   array of strings representing a grid
+   */
+  private void appendGrid(String[] strings)
+  {
+    // a top row with character labels
+    appendSpaces(MARGIN);
+    int cols = strings.length > 0 ? strings[0].length() : 0;
+    for (int col = 0; col < cols; col += 1)
+    {
+      if (col > 0)
+      {
+        frame.append(' ');
+      }
+      frame.append((char) ('a' + col));
+    }
+    frame.append('\n');
+
+    for (int row = 0; row < strings.length; row += 1)
+    {
+      // a numeric label to the left of each row, right-aligned in four
+      // characters
+      int start = frame.length();
+      frame.append(row);
+      while (frame.length() - start < 4)
+      {
+        frame.insert(start, ' ');
+      }
+      appendSpaces(2);
+
+      String current = strings[row];
+      for (int col = 0; col < current.length(); col += 1)
+      {
+        if (col > 0)
+        {
+          frame.append(' ');
+        }
+        frame.append(current.charAt(col));
+      }
+      frame.append('\n');
+    }
+  }
+
+  /**
+   * Appends the given number of spaces to the frame.
+   * @param n
+   */
+  private void appendSpaces(int n)
+  {
+    for (int i = 0; i < n; i += 1)
+    {
+      frame.append(' ');
+    }
+  }
+
+  /**
+   * Returns whether two grids have the same number of rows and columns.
+   * @param a
+   * @param b
+   * @return
+   */
+  private static boolean sameShape(String[] a, String[] b)
+  {
+    if (a.length != b.length)
+    {
+      return false;
+    }
+    for (int row = 0; row < a.length; row += 1)
+    {
+      if (a[row].length() != b[row].length())
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+}
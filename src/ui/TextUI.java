@@ -50,15 +50,29 @@ public class TextUI
    * Indicates whether hidden cells should be shown. 
    */
   private boolean revealAll;
+
+  /**
+   * Renderer used to draw the grid.
+   */
+  private TextRenderer renderer;
+
+  /**
+   * Message to show below the grid the next time it is drawn, or null
+   * if none.  Anything printed before the grid is drawn would be cleared
+   * along with it in ANSI mode.
+   */
+  private String message;
   
   /**
-   * Entry point.
+   * Entry point.  With the argument "-ansi", the grid is redrawn in place
+   * using ANSI escape codes.
    * @param args
    */
   public static void main(String[] args)
   {
     Minesweeper g = new Minesweeper(GRID2);
-    new TextUI(g).go();
+    boolean ansi = args.length > 0 && args[0].equals("-ansi");
+    new TextUI(g, ansi).go();
   }
   
   /**
@@ -67,10 +81,24 @@ public class TextUI
    *   an instance of Minesweeper
    */
   public TextUI(Minesweeper givenGame)
+  {
+    this(givenGame, false);
+  }
+
+  /**
+   * Constructs an instance of the user interface with the given game,
+   * optionally redrawing only the changed cells of the grid.
+   * @param game
+   *   an instance of Minesweeper
+   * @param ansi
+   *   true if the grid should be redrawn in place using ANSI escape codes
+   */
+  public TextUI(Minesweeper givenGame, boolean ansi)
   {
     game = givenGame;
     in = new Scanner(System.in);
     revealAll = false;
+    renderer = new TextRenderer(System.out, ansi);
   }
   
   /**
@@ -80,8 +108,13 @@ public class TextUI
   {
     while(!game.isOver())
     {
-      printGrid(game.getGridAsStringArray(revealAll));
+      renderer.render(game.getGridAsStringArray(revealAll));
       System.out.println();
+      if (message != null)
+      {
+        System.out.println(message);
+        message = null;
+      }
       System.out.println("(mines - flags): " + (game.getNumMines() - game.getNumFlags()));
       System.out.print("Enter rowcolumn, 'f' rowcolumn (flag), 'h' (hint), or 's' (show all) ");
       String text = in.nextLine().trim();
@@ -100,7 +133,10 @@ public class TextUI
         else if (ch == 'h')
         {
           // hint
-          game.hint();
+          if (!game.hint())
+          {
+            message = "No hint available.";
+          }
         }
         else if (ch == 's')
         {
@@ -110,6 +146,9 @@ public class TextUI
       }
     }   
     
+    // draw the grid first, so the result is not cleared with the screen
+    renderer.render(game.getGridAsStringArray(true));   
+    System.out.println();
     if (game.isWon())
     {
       System.out.println("You win!");
@@ -119,8 +158,6 @@ public class TextUI
     {
       System.out.println("Sorry, you've lost.");
     }
-    System.out.println();
-    printGrid(game.getGridAsStringArray(true));   
   }
 
   /**
@@ -191,32 +228,12 @@ public class TextUI
   /**
    * Display the contents of a string array representing 
    * a game grid on the console, marked with indices in the left and top margins.
+   * The whole grid is written at once.
    * @param strings
    *   array of strings reprenting a grid
-   * @param revealAll
-   *   true if cell contents should be shown even if hidden
    */
   public static void printGrid(String[] strings)
   {
-    // print a top row with character labels
-    System.out.print("      ");
-    for (int col = 0; col < strings[0].length() - 1; col += 1)
-    {
-      char ch = (char)('a' + col);
-      System.out.print(ch + " ");
-    }
-    System.out.println((char)('a' + strings[0].length()));
-
-    for (int row = 0; row < strings.length; row += 1)
-    {
-      // print a numeric label to the left of each row
-      System.out.printf("%4d  ", row);
-      String current = strings[row];
-      for (int col = 0; col < current.length() - 1; col += 1)
-      {
-        System.out.print(current.charAt(col) + " ");
-      }
-      System.out.println(current.charAt(current.length() - 1));
-    }
+    new TextRenderer(System.out, false).render(strings);
   }
 }
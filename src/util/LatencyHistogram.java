@@ -0,0 +1,142 @@
+package util;
+
+/**
+ * Histogram of durations, such as the time taken by each game of a batch or
+ * by each request to a server. Histograms from different threads can be
+ * merged with <code>add</code>.
+ * <p>
+ * The histogram has a fixed number of buckets, so it takes constant space no
+ * matter how many durations are recorded. Each power of two is split into
+ * <code>SUB_BUCKETS</code> equal parts, which keeps every percentile within
+ * about 6% of the exact value.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class LatencyHistogram
+{
+	/**
+	 * Number of buckets each power of two is split into
+	 */
+	private static final int SUB_BUCKETS = 16;
+	/**
+	 * log2 of <code>SUB_BUCKETS</code>
+	 */
+	private static final int SUB_BITS = 4;
+
+	/**
+	 * Number of durations recorded
+	 */
+	private long count;
+	/**
+	 * Longest duration, in nanoseconds
+	 */
+	private long max;
+	/**
+	 * Number of durations that fall in each bucket
+	 */
+	private final long[] buckets = new long[(64 - SUB_BITS + 1) * SUB_BUCKETS];
+
+	/**
+	 * Records one duration.
+	 *
+	 * @param nanos
+	 *            duration in nanoseconds
+	 */
+	public void record(long nanos)
+	{
+		count++;
+		max = Math.max(max, nanos);
+		buckets[bucket(nanos)]++;
+	}
+
+	/**
+	 * Adds the durations recorded by another histogram to this one.
+	 *
+	 * @param other
+	 *            histogram to add
+	 */
+	public void add(LatencyHistogram other)
+	{
+		count += other.count;
+		max = Math.max(max, other.max);
+		for (int i = 0; i < buckets.length; i++)
+		{
+			buckets[i] += other.buckets[i];
+		}
+	}
+
+	/**
+	 * Returns the number of durations recorded.
+	 *
+	 * @return number of durations
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Returns an upper bound on the given fraction of the durations, accurate
+	 * to the width of a bucket.
+	 *
+	 * @param fraction
+	 *            fraction of durations, between 0 and 1
+	 * @return duration in nanoseconds
+	 */
+	public long getPercentile(double fraction)
+	{
+		long rank = (long) Math.ceil(fraction * count);
+		long seen = 0;
+		for (int i = 0; i < buckets.length; i++)
+		{
+			seen += buckets[i];
+			if (seen >= rank && seen > 0)
+			{
+				return Math.min(upperBound(i), max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the longest duration.
+	 *
+	 * @return duration in nanoseconds
+	 */
+	public long getMax()
+	{
+		return max;
+	}
+
+	/**
+	 * Returns the bucket of the given duration. Values below
+	 * <code>SUB_BUCKETS</code> get a bucket each; above that, a value with its
+	 * highest bit at position e goes in one of the <code>SUB_BUCKETS</code>
+	 * buckets for e, chosen by the next <code>SUB_BITS</code> bits.
+	 */
+	private static int bucket(long nanos)
+	{
+		if (nanos < SUB_BUCKETS)
+		{
+			return (int) Math.max(nanos, 0);
+		}
+		int e = 63 - Long.numberOfLeadingZeros(nanos);
+		int sub = (int) (nanos >>> (e - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (e - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Returns the largest duration that falls in the given bucket.
+	 */
+	private static long upperBound(int bucket)
+	{
+		if (bucket < SUB_BUCKETS)
+		{
+			return bucket;
+		}
+		int e = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		long low = (SUB_BUCKETS + sub) << (e - SUB_BITS);
+		return low + (1L << (e - SUB_BITS)) - 1;
+	}
+}